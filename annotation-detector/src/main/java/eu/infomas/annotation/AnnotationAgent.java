@@ -0,0 +1,134 @@
+/* AnnotationAgent.java
+ *
+ * Created: 2026-10-19 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@code AnnotationAgent} is a Java agent reporting the annotations of every class as it
+ * is loaded, including generated classes and classes which are not available from the
+ * class path. The ClassFile bytes, already in memory, are parsed by all registered
+ * {@link AnnotationDetector} instances. The bytes are never modified.
+ * <p>
+ * Start the JVM with {@code -javaagent:annotation-detector.jar} (or load the agent in a
+ * running JVM) and register the detectors as early as possible:
+ * <pre>
+ * AnnotationAgent.register(new AnnotationDetector(reporter));
+ * </pre>
+ * Only classes loaded after registration are reported. Combine the agent with an up-front
+ * scan to report the classes loaded before.
+ * <p>
+ * An {@code AnnotationDetector} is not thread safe, so classes loaded concurrently are
+ * parsed one at a time by a registered detector. A thread loading a class never waits
+ * for a detector in use (it may hold class loading locks the thread using the detector
+ * needs): the ClassFile is queued and parsed when the current scan, started by the agent
+ * or by a {@code detect} method, is finished. This includes classes loaded by a reporter
+ * during a scan. So the reporters of a registered detector are called from any thread
+ * loading classes, while that thread may hold class loading locks. Reporters must return
+ * quickly and must not wait for other threads.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+public final class AnnotationAgent implements ClassFileTransformer {
+
+    private static final List<AnnotationDetector> DETECTORS =
+        new CopyOnWriteArrayList<AnnotationDetector>();
+    // prevents reporting classes loaded while a class is parsed or reported
+    private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<Boolean>();
+    private static Instrumentation instrumentation;
+
+    AnnotationAgent() {
+    }
+
+    /**
+     * Entry point when the agent is specified on the command line.
+     */
+    public static void premain(final String agentArgs, final Instrumentation inst) {
+        install(inst);
+    }
+
+    /**
+     * Entry point when the agent is loaded in a running JVM.
+     */
+    public static void agentmain(final String agentArgs, final Instrumentation inst) {
+        install(inst);
+    }
+
+    /**
+     * Return {@code true} if the agent is installed in this JVM.
+     */
+    public static synchronized boolean isInstalled() {
+        return instrumentation != null;
+    }
+
+    /**
+     * Report the annotations of all classes loaded from now on to the specified detector.
+     */
+    public static void register(final AnnotationDetector detector) {
+        if (detector == null) {
+            throw new IllegalArgumentException("detector must be specified");
+        }
+        DETECTORS.add(detector);
+    }
+
+    /**
+     * Stop reporting to the specified detector.
+     */
+    public static void unregister(final AnnotationDetector detector) {
+        DETECTORS.remove(detector);
+    }
+
+    @Override
+    public byte[] transform(final ClassLoader loader, final String className,
+        final Class<?> classBeingRedefined, final ProtectionDomain protectionDomain,
+        final byte[] classfileBuffer) {
+
+        // redefined classes have been reported when they were loaded
+        if (classBeingRedefined == null && !DETECTORS.isEmpty() && ACTIVE.get() == null) {
+            ACTIVE.set(Boolean.TRUE);
+            try {
+                for (final AnnotationDetector detector : DETECTORS) {
+                    detector.detectLoaded(className, classfileBuffer);
+                }
+            } finally {
+                ACTIVE.remove();
+            }
+        }
+        // the class is not transformed
+        return null;
+    }
+
+    // private
+
+    private static synchronized void install(final Instrumentation inst) {
+        if (instrumentation == null) {
+            instrumentation = inst;
+            inst.addTransformer(new AnnotationAgent());
+        }
+    }
+
+}
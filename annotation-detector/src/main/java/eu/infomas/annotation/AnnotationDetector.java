@@ -26,18 +26,28 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Method;
-import java.net.JarURLConnection;
-import java.net.URISyntaxException;
+import java.lang.annotation.ElementType;
 import java.net.URL;
-import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * {@code AnnotationDetector} reads Java Class File (".class") files and reports the
@@ -165,6 +175,107 @@ public final class AnnotationDetector {
 
     }
 
+    /**
+     * A {@code NameReporter} reports the detected annotations by name, so the annotation
+     * classes do not have to be loaded. This also enables reporting all annotations of a
+     * package, or simply all annotations, at once.
+     */
+    public interface NameReporter {
+
+        /**
+         * Return the selectors of the annotation types which must be reported (all other
+         * annotations are skipped). A selector is a fully qualified annotation type name
+         * (for example {@code "javax.persistence.Entity"}), a package name followed by
+         * {@code ".*"} (for example {@code "javax.persistence.*"}, also matching sub
+         * packages) or {@code "*"}, matching all annotation types.
+         */
+        String[] annotationNames();
+
+        /**
+         * This call back method is used to report a type, field or method level
+         * {@code Annotation}.
+         * Only {@code Annotation}s, selected by {@link #annotationNames()} are reported!
+         *
+         * @param target {@code TYPE}, {@code FIELD} or {@code METHOD}
+         * @param annotationName the fully qualified name of the annotation type
+         * @param className the fully qualified name of the annotated type
+         * @param memberName the name of the annotated field or method, {@code null} for
+         * type level annotations
+         */
+        void reportAnnotation(ElementType target, String annotationName, String className,
+            String memberName);
+
+    }
+
+    /**
+     * A {@code BatchReporter} receives the detected annotations in chunks, see
+     * {@link HitBatch}. A batch is reported if it is full and at the end of every scan
+     * (every call to a {@code detect} method). This results in far fewer calls than
+     * reporting every annotation separately and enables column wise processing, for
+     * example when writing the detected annotations to an index or file.
+     */
+    public interface BatchReporter {
+
+        /**
+         * Return the selectors of the annotation types which must be reported, see
+         * {@link NameReporter#annotationNames()}.
+         */
+        String[] annotationNames();
+
+        /**
+         * Report a batch of detected annotations. The batch is reused, so it is only
+         * valid during this call.
+         */
+        void reportBatch(HitBatch batch);
+
+    }
+
+    /**
+     * Call back interface for Java ClassFile files which can not be parsed. Malformed
+     * ClassFiles are skipped, the scan continues with the next ClassFile.
+     */
+    public interface ErrorReporter {
+
+        /**
+         * Report a Java ClassFile which can not be parsed.
+         *
+         * @param name the name of the ClassFile (file path or ZIP/JAR file entry name) or
+         * {@code null} if unknown
+         * @param message the reason why the ClassFile can not be parsed
+         */
+        void reportError(String name, String message);
+
+    }
+
+    /**
+     * Call back interface for other resources (like {@code META-INF/services/*} files or
+     * plugin descriptors), found in the same pass over the directories and ZIP/JAR files
+     * as the Java ClassFiles, see {@link #resourceReporter(ResourceReporter)}.
+     */
+    public interface ResourceReporter {
+
+        /**
+         * Return the patterns of the resource names to report, for example
+         * {@code "META-INF/services/*"}, {@code "META-INF/*.xml"} or
+         * {@code "*.properties"}. Resource names use '/' as separator and are relative to
+         * the directory or ZIP/JAR file. A {@code '*'} matches any sequence of characters
+         * except '/'. A pattern without '/' is matched against the file name only.
+         * Java ClassFiles are never reported as resource.
+         */
+        String[] resourceNames();
+
+        /**
+         * Report a resource. The stream is read lazily (a ZIP/JAR file entry is only
+         * inflated when read) and only valid during this call, it is closed afterwards.
+         *
+         * @param name the name of the resource, for example
+         * {@code "META-INF/services/javax.annotation.processing.Processor"}
+         * @param stream the content of the resource
+         */
+        void reportResource(String name, InputStream stream) throws IOException;
+
+    }
+
     // Only used during development. If set to "true" debug messages are displayed.
     private static final boolean DEBUG = false;
 
@@ -182,7 +293,16 @@ public final class AnnotationDetector {
     private static final int CP_NAME_AND_TYPE = 12;
     private static final int CP_METHOD_HANDLE = 15;
     private static final int CP_METHOD_TYPE = 16;
+    private static final int CP_DYNAMIC = 17;
     private static final int CP_INVOKE_DYNAMIC = 18;
+    private static final int CP_MODULE = 19;
+    private static final int CP_PACKAGE = 20;
+
+    // the names of the attributes holding the annotations, as modified UTF-8 bytes
+    private static final byte[] RUNTIME_VISIBLE_ANNOTATIONS =
+        AnnotationMatcher.modifiedUtf8("RuntimeVisibleAnnotations");
+    private static final byte[] RUNTIME_INVISIBLE_ANNOTATIONS =
+        AnnotationMatcher.modifiedUtf8("RuntimeInvisibleAnnotations");
 
     // AnnotationElementValue
     private static final int BYTE = 'B';
@@ -200,197 +320,988 @@ public final class AnnotationDetector {
     private static final int ANNOTATION = '@';
     private static final int ARRAY = '[';
 
-    // The buffer is reused during the life cycle of this AnnotationDetector instance
-    private final ClassFileBuffer cpBuffer = new ClassFileBuffer();
-    // the annotation types to report, see {@link #annotations()}
-    private final Map<String, Class<? extends Annotation>> annotations;
+    // The buffer is acquired from the buffer pool for the duration of a single scan
+    private ClassFileBufferPool bufferPool = ClassFileBufferPool.getDefault();
+    private ClassFileBuffer cpBuffer;
+    // the compiled matcher, value predicates and parse plan, replaced by filter()
+    private ScanSpec spec;
+    // the annotation types to report, see {@link #annotations()}, null if reported by name
+    private final Class<? extends Annotation>[] annotationTypes;
+    // the compiled annotation type names or selectors, returns the index of the selector
+    private final AnnotationMatcher matcher;
 
     private TypeReporter typeReporter;
     private FieldReporter fieldReporter;
     private MethodReporter methodReporter;
+    private NameReporter nameReporter;
+    private BatchReporter batchReporter;
+    private HitBatch batch;
+
+    // the parse plan: only annotations which can be reported are parsed
+    private final boolean parseTypeAnnotations;
+    private final boolean parseFieldAnnotations;
+    private final boolean parseMethodAnnotations;
 
-    // the 'raw' name of this interface or class (using '/' instead of '.' in package name)
-    private String typeName;
+    // the ClassFile being parsed, used for random access to the constant pool
+    private ClassFileBuffer classFile;
     // Reusing the constantPool is not needed for better performance
     private Object[] constantPool;
-    private String memberName;
+    // the offsets of the CONSTANT_Utf8 entries in the ClassFile, 0 for other entries
+    private int[] utf8Offsets = new int[256];
+    // the constant pool indexes of the annotation attribute names, 0 if not used
+    private int visibleAnnotationsIndex;
+    private int invisibleAnnotationsIndex;
+    // names are only decoded if an annotation is reported, see typeName() and memberName()
+    private int thisClassIndex;
+    private int memberNameIndex;
+
+    private boolean walkClassLoaderHierarchy;
+    private boolean skipShadowedClasses;
+    private File scanServerFile;
+    private ScanCache scanCache;
+    private int parallelism = 1;
+    private ErrorReporter errorReporter;
+    private ResourceReporter resourceReporter;
+    // only used if references are collected, see collectReferences()
+    private ReferenceIndex.Collector references;
+    private byte[] cpTags;
+    private int[] cpRefs;
+    private int errorCount;
+    // the reason why the current ClassFile can not be parsed, null if valid
+    private String malformed;
+    // only used if a ScanCache is defined
+    private final ClassSummary.Builder summaryBuilder = new ClassSummary.Builder();
+    private boolean collectSummary;
+    // held while scanning, ClassFiles loaded in the mean time are queued, see detectLoaded()
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Queue<LoadedClass> loaded = new ConcurrentLinkedQueue<LoadedClass>();
 
     /**
      * Create a new {@code AnnotationDetector}, reporting the detected annotations
      * to the specified {@code Reporter}.
      */
     public AnnotationDetector(final Reporter reporter) {
-        final Class<? extends Annotation>[] a = reporter.annotations();
-        annotations = new HashMap<String, Class<? extends Annotation>>(a.length);
-        // map "raw" type names to Class object
-        for (int i = 0; i < a.length; ++i) {
-            annotations.put("L" + a[i].getName().replace('.', '/') + ";", a[i]);
+        this(ScanSpec.of(reporter.annotations()), reporter);
+    }
+
+    /**
+     * Create a new {@code AnnotationDetector} for the specified compiled {@link ScanSpec},
+     * reporting the detected annotations to the specified {@code Reporter}. The annotation
+     * types of the spec are reported, {@link Reporter#annotations()} is not used.
+     *
+     * @throws IllegalArgumentException if the spec is compiled from selectors
+     */
+    public AnnotationDetector(final ScanSpec spec, final Reporter reporter) {
+        this.spec = spec;
+        annotationTypes = spec.annotationTypes();
+        if (annotationTypes == null) {
+            throw new IllegalArgumentException(
+                "A Reporter requires a ScanSpec compiled from annotation types");
         }
+        matcher = spec.matcher();
         if (reporter instanceof TypeReporter) {
             typeReporter = (TypeReporter)reporter;
         }
         if (reporter instanceof FieldReporter) {
             fieldReporter = (FieldReporter)reporter;
         }
-        if (reporter instanceof MethodReporter) {
-            methodReporter = (MethodReporter)reporter;
+        if (reporter instanceof MethodReporter) {
+            methodReporter = (MethodReporter)reporter;
+        }
+        if (typeReporter == null && fieldReporter == null && methodReporter == null) {
+            throw new AssertionError("No reporter defined");
+        }
+        parseTypeAnnotations = typeReporter != null && spec.parseTypeAnnotations();
+        parseFieldAnnotations = fieldReporter != null && spec.parseFieldAnnotations();
+        parseMethodAnnotations = methodReporter != null && spec.parseMethodAnnotations();
+    }
+
+    /**
+     * Create a new {@code AnnotationDetector}, reporting the detected annotations by name
+     * to the specified {@code NameReporter}. Annotation classes are never loaded.
+     */
+    public AnnotationDetector(final NameReporter reporter) {
+        this(ScanSpec.of(reporter.annotationNames()), reporter);
+    }
+
+    /**
+     * Create a new {@code AnnotationDetector} for the specified compiled {@link ScanSpec},
+     * reporting the detected annotations by name to the specified {@code NameReporter}.
+     * The selectors of the spec are used, {@link NameReporter#annotationNames()} is not.
+     */
+    public AnnotationDetector(final ScanSpec spec, final NameReporter reporter) {
+        this.spec = spec;
+        // reported by name
+        annotationTypes = null;
+        matcher = spec.matcher();
+        nameReporter = reporter;
+        parseTypeAnnotations = spec.parseTypeAnnotations();
+        parseFieldAnnotations = spec.parseFieldAnnotations();
+        parseMethodAnnotations = spec.parseMethodAnnotations();
+    }
+
+    /**
+     * Create a new {@code AnnotationDetector}, reporting the detected annotations in
+     * batches of at most the specified size to the specified {@code BatchReporter}.
+     * Annotation classes are never loaded.
+     */
+    public AnnotationDetector(final BatchReporter reporter, final int batchSize) {
+        this(ScanSpec.of(reporter.annotationNames()), reporter, batchSize);
+    }
+
+    /**
+     * Create a new {@code AnnotationDetector} for the specified compiled {@link ScanSpec},
+     * reporting the detected annotations in batches of at most the specified size to the
+     * specified {@code BatchReporter}. The selectors of the spec are used,
+     * {@link BatchReporter#annotationNames()} is not.
+     */
+    public AnnotationDetector(final ScanSpec spec, final BatchReporter reporter,
+        final int batchSize) {
+
+        this.spec = spec;
+        // reported by name
+        annotationTypes = null;
+        matcher = spec.matcher();
+        batchReporter = reporter;
+        batch = new HitBatch(batchSize);
+        parseTypeAnnotations = spec.parseTypeAnnotations();
+        parseFieldAnnotations = spec.parseFieldAnnotations();
+        parseMethodAnnotations = spec.parseMethodAnnotations();
+    }
+
+    /**
+     * Remove all cached class path roots, as resolved by {@link #detect(String...)}.
+     * <p>
+     * The class path roots of a package are resolved only once per class loader. Use this
+     * method if class path entries are added at runtime, for example after adding URL's
+     * to an {@code URLClassLoader} or when new package directories have been created.
+     */
+    public static void clearClassPathCache() {
+        ClassPathRoots.clear();
+    }
+
+    /**
+     * Resolve package names, as used by {@link #detect(String...)}, by walking the
+     * {@link java.net.URLClassLoader} hierarchy of the context class loader directly,
+     * instead of querying {@code ClassLoader.getResources()} and opening a
+     * {@code JarURLConnection} for every returned URL.
+     * <p>
+     * Every jar file in the hierarchy is opened only once to determine the packages it
+     * contains. If the hierarchy contains class loaders of an unknown type, package names
+     * are resolved using {@code ClassLoader.getResources()}.
+     * Default is {@code false}.
+     */
+    public AnnotationDetector walkClassLoaderHierarchy(final boolean enabled) {
+        this.walkClassLoaderHierarchy = enabled;
+        return this;
+    }
+
+    /**
+     * Skip Java ClassFile files shadowed by a ClassFile with the same name earlier on the
+     * class path, for example in duplicate or shaded jar files. Only the first one is
+     * reported, as the class loader would load it. For multi-release jar files only the
+     * {@code META-INF/versions/N/} ClassFile used by the running JVM is reported.
+     * <p>
+     * Shadowed ClassFiles are skipped by name, before they are read. Only applies to the
+     * files, directories and ZIP/JAR files scanned by a single {@link ClassFileIterator}.
+     * Default is {@code false}.
+     */
+    public AnnotationDetector skipShadowedClasses(final boolean enabled) {
+        this.skipShadowedClasses = enabled;
+        return this;
+    }
+
+    /**
+     * Query the {@link ScanServer} of the specified server file (containing its port and
+     * secret), instead of reading and parsing the ClassFiles in this JVM. Used by {@link #detect(String...)}
+     * and {@link #detect(File...)}. If the server is not available or the scan fails, the
+     * ClassFiles are scanned locally. Annotations are only reported after the complete
+     * result is received from the server.
+     * <p>
+     * The server is not used if value predicates are defined or resources are reported.
+     * Note that the {@code ErrorReporter} is not called for malformed ClassFiles scanned by
+     * the server.
+     * Default is {@code null} (no server).
+     */
+    public AnnotationDetector scanServer(final File serverFile) {
+        this.scanServerFile = serverFile;
+        return this;
+    }
+
+    /**
+     * Use the specified {@link ScanCache} (for example {@link ScanCache#getShared()}) for
+     * all Java ClassFile files in ZIP/JAR files. The annotations of a ClassFile already
+     * available in the cache are reported without reading and parsing the ClassFile.
+     * Default is {@code null} (no cache).
+     */
+    public AnnotationDetector scanCache(final ScanCache cache) {
+        this.scanCache = cache;
+        return this;
+    }
+
+    /**
+     * Only report annotations of the specified type if the specified predicate on one of
+     * its element values is satisfied, for example only {@code @Profile("prod")}:
+     * <pre>
+     * detector.filter("org.springframework.context.annotation.Profile",
+     *     ValuePredicate.arrayContains("value", "prod"));
+     * </pre>
+     * If more than one predicate is defined for the same annotation type, all predicates
+     * must be satisfied. Predicates are evaluated on the raw ClassFile, before the
+     * annotation is reported, see {@link ValuePredicate}.
+     * <p>
+     * Note that a {@link ScanCache} is not used if value predicates are defined.
+     *
+     * @param annotationName the fully qualified name of the annotation type
+     */
+    public AnnotationDetector filter(final String annotationName,
+        final ValuePredicate predicate) {
+
+        // the spec is immutable, the shared spec (if any) is not changed
+        spec = spec.filter(annotationName, predicate);
+        return this;
+    }
+
+    /**
+     * Only report annotations of the specified type if the specified predicate on one of
+     * its element values is satisfied.
+     *
+     * @see #filter(String, ValuePredicate)
+     */
+    public AnnotationDetector filter(final Class<? extends Annotation> annotation,
+        final ValuePredicate predicate) {
+
+        return filter(annotation.getName(), predicate);
+    }
+
+    /**
+     * Read and inflate the entries of large ZIP/JAR files (and read the ClassFiles of
+     * OSGi bundles and JBoss VFS roots) concurrently, using the specified number of
+     * threads. Parsing the ClassFiles and reporting the annotations is still done
+     * by the calling thread, in the same order as when reading sequentially.
+     * <p>
+     * Note that ZIP/JAR file entries are not read concurrently in combination with a
+     * {@link ScanCache}. Default is {@code 1} (sequential reading).
+     */
+    public AnnotationDetector parallelism(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads < 1: " + threads);
+        }
+        this.parallelism = threads;
+        return this;
+    }
+
+    /**
+     * Acquire the buffers used for reading Java ClassFile files from the specified
+     * {@link ClassFileBufferPool}. A buffer is acquired at the start of every scan and
+     * released to the pool when the scan is finished.
+     * Default is {@link ClassFileBufferPool#getDefault()}.
+     */
+    public AnnotationDetector bufferPool(final ClassFileBufferPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool == null");
+        }
+        this.bufferPool = pool;
+        return this;
+    }
+
+    /**
+     * Report Java ClassFile files which can not be parsed to the specified
+     * {@code ErrorReporter}. Default is {@code null}, malformed ClassFiles are only counted.
+     *
+     * @see #getErrorCount()
+     */
+    public AnnotationDetector errorReporter(final ErrorReporter reporter) {
+        this.errorReporter = reporter;
+        return this;
+    }
+
+    /**
+     * Report the resources selected by the specified {@code ResourceReporter} while
+     * scanning directories and ZIP/JAR files, so every ZIP/JAR file is opened and
+     * enumerated only once. Resources in ZIP/JAR files are reported independent of the
+     * scanned packages, but directories are only listed within the scanned packages.
+     * <p>
+     * Note that a {@link ScanServer} is not used and no ZIP/JAR files are skipped using
+     * the {@link ScanCache} if resources are reported.
+     * Default is {@code null} (no resources are reported).
+     */
+    public AnnotationDetector resourceReporter(final ResourceReporter reporter) {
+        this.resourceReporter = reporter;
+        return this;
+    }
+
+    /**
+     * Collect the class and member references of all scanned classes, as found in the
+     * constant pool of their ClassFiles, in the specified {@link ReferenceIndex.Collector}.
+     * The references are collected in the same pass as the annotations.
+     * <p>
+     * Note that a {@link ScanServer} and a {@link ScanCache} are not used if references are
+     * collected, because all ClassFiles must be parsed.
+     * Default is {@code null} (no references are collected).
+     */
+    public AnnotationDetector collectReferences(final ReferenceIndex.Collector collector) {
+        this.references = collector;
+        return this;
+    }
+
+    /**
+     * Return the number of Java ClassFile files which could not be parsed, since this
+     * {@code AnnotationDetector} has been created.
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Report all Java ClassFile files available on the class path.
+     *
+     * @see #detect(File...)
+     */
+    public void detect() throws IOException {
+        detect(new ClassFileIterator());
+    }
+
+    /**
+     * Report all Java ClassFile files available on the class path within
+     * the specified packages and sub packages.
+     *
+     * @see #detect(File...)
+     */
+    public void detect(final String... packageNames) throws IOException {
+        detect(Thread.currentThread().getContextClassLoader(), packageNames);
+    }
+
+    /**
+     * Scan all Java ClassFile files available on the class path in the background, using
+     * the specified {@code Executor}.
+     *
+     * @see #detect()
+     * @see #detectAsync(Executor, String...)
+     */
+    public Future<Void> detectAsync(final Executor executor) {
+        return submit(executor, new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                detect();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Scan the specified packages in the background, using the specified {@code Executor}
+     * (for example an executor using virtual threads). The reporter is called from the
+     * executing thread as annotations are detected, use an {@link AnnotationHitQueue} to
+     * consume the detected annotations from another thread.
+     * <p>
+     * The packages are resolved using the context class loader of the calling thread.
+     * This {@code AnnotationDetector} must not be used for another scan before the
+     * returned {@code Future} is done. Cancelling the {@code Future} (with interruption)
+     * stops the scan.
+     *
+     * @throws RejectedExecutionException if the executor does not accept the scan
+     * @see #detect(String...)
+     * @see #detectAsync(Executor, ScanResult.Collector, String...)
+     */
+    public Future<Void> detectAsync(final Executor executor, final String... packageNames) {
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        return submit(executor, new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                detect(loader, packageNames);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Scan the specified files and/or directories in the background, using the specified
+     * {@code Executor}.
+     *
+     * @see #detectAsync(Executor, String...)
+     * @see #detect(File...)
+     */
+    public Future<Void> detectAsync(final Executor executor,
+        final File... filesOrDirectories) {
+
+        return submit(executor, new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                detect(filesOrDirectories);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Scan all Java ClassFile files available on the class path in the background and
+     * return the {@link ScanResult} built by the specified collector, which must be the
+     * reporter of this {@code AnnotationDetector}.
+     *
+     * @see #detectAsync(Executor, ScanResult.Collector, String...)
+     */
+    public Future<ScanResult> detectAsync(final Executor executor,
+        final ScanResult.Collector collector) {
+
+        checkCollector(collector);
+        return submit(executor, new Callable<ScanResult>() {
+            @Override
+            public ScanResult call() throws IOException {
+                detect();
+                return collector.build();
+            }
+        });
+    }
+
+    /**
+     * Scan the specified packages in the background and return the {@link ScanResult}
+     * built by the specified collector, which must be the reporter of this
+     * {@code AnnotationDetector}:
+     * <pre>
+     * final ScanResult.Collector collector = new ScanResult.Collector("javax.persistence.*");
+     * final Future&lt;ScanResult&gt; result =
+     *     new AnnotationDetector(collector).detectAsync(executor, collector, "com.example");
+     * </pre>
+     *
+     * @see #detectAsync(Executor, String...)
+     */
+    public Future<ScanResult> detectAsync(final Executor executor,
+        final ScanResult.Collector collector, final String... packageNames) {
+
+        checkCollector(collector);
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        return submit(executor, new Callable<ScanResult>() {
+            @Override
+            public ScanResult call() throws IOException {
+                detect(loader, packageNames);
+                return collector.build();
+            }
+        });
+    }
+
+    /**
+     * Scan the specified files and/or directories in the background and return the
+     * {@link ScanResult} built by the specified collector, which must be the reporter of
+     * this {@code AnnotationDetector}.
+     *
+     * @see #detectAsync(Executor, ScanResult.Collector, String...)
+     */
+    public Future<ScanResult> detectAsync(final Executor executor,
+        final ScanResult.Collector collector, final File... filesOrDirectories) {
+
+        checkCollector(collector);
+        return submit(executor, new Callable<ScanResult>() {
+            @Override
+            public ScanResult call() throws IOException {
+                detect(filesOrDirectories);
+                return collector.build();
+            }
+        });
+    }
+
+    /**
+     * Scan all Java ClassFile ({@code *.class}) files available in the specified files
+     * and/or directories.
+     * <p>
+     * In Java, the
+     * <a href="http://docs.oracle.com/javase/8/docs/technotes/tools/unix/classpath.html">
+     * Class path</a> contains directories (top level directory as package root) and/or
+     * jar files (including zip files).
+     * <p>
+     * Note that non-class files (files, not starting with the magic number
+     * {@code CAFEBABE} are silently ignored.
+     *
+     * @param filesOrDirectories Valid files are: jar files, Java *.class files (all other
+     * files are silently ignored) and directories which are package root directories
+     */
+    public void detect(final File... filesOrDirectories) throws IOException {
+        if (DEBUG) {
+            print("detectFilesOrDirectories: %s", (Object)filesOrDirectories);
+        }
+        detect(filesOrDirectories, null);
+    }
+
+    /**
+     * Scan the specified Java ClassFile, already available in memory (for example
+     * generated byte code). The bytes are parsed in place, without being copied.
+     *
+     * @see #detect(String, byte[], int, int)
+     */
+    public void detect(final byte[] classFile) {
+        detect(null, classFile, 0, classFile.length);
+    }
+
+    /**
+     * Scan the Java ClassFile in the specified part of a byte array. The bytes are parsed
+     * in place, without being copied, so the array must not be modified during this call.
+     * Bytes not starting with the magic number {@code CAFEBABE} are silently ignored.
+     *
+     * @param name the logical name of the ClassFile, only used when reporting errors (see
+     * {@link #errorReporter(ErrorReporter)}), may be {@code null}
+     */
+    public void detect(final String name, final byte[] classFile, final int offset,
+        final int length) {
+
+        detect(name, new ClassFileBuffer(classFile, offset, length));
+    }
+
+    /**
+     * Scan the Java ClassFile in the remaining bytes of the specified {@code ByteBuffer}.
+     * The position of the {@code ByteBuffer} is not changed. The bytes of a buffer backed
+     * by an accessible array are parsed in place, other buffers (like direct buffers) are
+     * copied once.
+     *
+     * @see #detect(String, byte[], int, int)
+     */
+    public void detect(final String name, final ByteBuffer classFile) {
+        if (classFile.hasArray()) {
+            detect(name, classFile.array(), classFile.arrayOffset() + classFile.position(),
+                classFile.remaining());
+        } else {
+            final byte[] bytes = new byte[classFile.remaining()];
+            classFile.duplicate().get(bytes);
+            detect(name, bytes, 0, bytes.length);
+        }
+    }
+
+    // package private
+
+    /**
+     * Scan a ClassFile loaded by the {@link AnnotationAgent}. If this detector is in use,
+     * by another thread or by the calling thread (a reporter loading a class), the ClassFile
+     * is queued and scanned when the current scan is finished. The calling thread never
+     * waits for this detector.
+     */
+    void detectLoaded(final String className, final byte[] classFile) {
+        if (!lock.isHeldByCurrentThread() && lock.tryLock()) {
+            try {
+                detect(className, new ClassFileBuffer(classFile, 0, classFile.length));
+            } finally {
+                unlock();
+            }
+        } else {
+            // the bytes may be passed to other transformers, so queue a copy
+            loaded.add(new LoadedClass(className, classFile.clone()));
+            if (!lock.isHeldByCurrentThread()) {
+                // the scan may be finished in the mean time
+                drainLoaded();
+            }
+        }
+    }
+
+    // private
+
+    /**
+     * Release the lock held while scanning, after scanning the queued ClassFiles if this is
+     * the outermost scan.
+     */
+    private void unlock() {
+        final boolean outermost = lock.getHoldCount() == 1;
+        try {
+            if (outermost) {
+                scanLoaded();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (outermost) {
+            // a ClassFile may be queued after the last call of scanLoaded()
+            drainLoaded();
+        }
+    }
+
+    // scan the queued ClassFiles, unless this detector is in use by another thread
+    private void drainLoaded() {
+        while (!loaded.isEmpty() && lock.tryLock()) {
+            try {
+                scanLoaded();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void scanLoaded() {
+        LoadedClass queued;
+        while ((queued = loaded.poll()) != null) {
+            detect(queued.className,
+                new ClassFileBuffer(queued.bytes, 0, queued.bytes.length));
+        }
+    }
+
+    private void detect(final ClassLoader loader, final String... packageNames)
+        throws IOException {
+
+        final String[] pkgNameFilter = new String[packageNames.length];
+        for (int i = 0; i < pkgNameFilter.length; ++i) {
+            pkgNameFilter[i] = packageNames[i].replace('.', '/');
+            if (!pkgNameFilter[i].endsWith("/")) {
+                pkgNameFilter[i] = pkgNameFilter[i].concat("/");
+            }
+        }
+        final Set<File> files = new LinkedHashSet<File>();
+        final Set<URL> vfsUrls = new LinkedHashSet<URL>();
+        final ClassPathRoots classPath = ClassPathRoots.of(loader);
+        for (final String packageName : pkgNameFilter) {
+            final ClassPathRoots.Roots roots =
+                classPath.resolve(packageName, walkClassLoaderHierarchy);
+            files.addAll(roots.files);
+            vfsUrls.addAll(roots.vfsUrls);
+        }
+        if (DEBUG) {
+            print("Files to scan: %s, VFS URL's to scan: %s", files, vfsUrls);
+        }
+        if (!files.isEmpty()) {
+            // see http://shipilev.net/blog/2016/arrays-wisdom-ancients/#_conclusion
+            detect(files.toArray(new File[0]), pkgNameFilter);
+        }
+        if (!vfsUrls.isEmpty()) {
+            // all VFS roots are traversed lazily by a single iterator, its ClassFiles are
+            // read ahead if parallelism > 1
+            detect(new VfsResourceIterator(vfsUrls));
+        }
+    }
+
+    private void detect(final File[] filesOrDirectories, final String[] pkgNameFilter)
+        throws IOException {
+
+        lock.lock();
+        try {
+            detectFiles(filesOrDirectories, pkgNameFilter);
+        } finally {
+            unlock();
+        }
+    }
+
+    private void detectFiles(final File[] filesOrDirectories, final String[] pkgNameFilter)
+        throws IOException {
+
+        if (scanServerFile != null && !spec.hasFilters() && resourceReporter == null &&
+            references == null) {
+
+            final List<AnnotationHit> hits;
+            try {
+                hits = ScanServer.query(scanServerFile, filesOrDirectories, pkgNameFilter,
+                    spec.selectors(), skipShadowedClasses);
+            } catch (IOException ex) {
+                if (DEBUG) {
+                    print("ScanServer not available: %s", ex);
+                }
+                detect(new ClassFileIterator(filesOrDirectories, pkgNameFilter));
+                return;
+            }
+            for (final AnnotationHit hit : hits) {
+                final String rawTypeName =
+                    'L' + hit.getAnnotationName().replace('.', '/') + ';';
+                report(reporterType(hit.getTarget()), matcher.match(rawTypeName),
+                    rawTypeName, hit.getClassName(), hit.getMemberName());
+            }
+            flush();
+        } else {
+            detect(new ClassFileIterator(filesOrDirectories, pkgNameFilter));
+        }
+    }
+
+    public void detect(final ResourceIterator iterator) throws IOException {
+        lock.lock();
+        try {
+            detectResources(iterator);
+        } finally {
+            unlock();
+        }
+    }
+
+    private void detectResources(final ResourceIterator iterator) throws IOException {
+        if (skipShadowedClasses && iterator instanceof ClassFileIterator) {
+            ((ClassFileIterator)iterator).skipShadowedClasses();
+        }
+        if (resourceReporter != null && iterator instanceof ClassFileIterator) {
+            ((ClassFileIterator)iterator).reportResources(
+                new ResourceFilter(resourceReporter));
+        }
+        cpBuffer = bufferPool.acquire();
+        try {
+            // read ahead jar file entries are not used if they are available from the scan
+            // cache, bundles are only read ahead if they are not cached, VFS files are never
+            // cached
+            if (parallelism > 1 && (iterator instanceof BundleResourceIterator ||
+                iterator instanceof VfsResourceIterator ||
+                iterator instanceof ClassFileIterator && !isScanCacheUsed())) {
+
+                final ExecutorService executor = newExecutor(parallelism);
+                try {
+                    if (iterator instanceof ClassFileIterator) {
+                        ((ClassFileIterator)iterator).readAhead(executor, parallelism);
+                    } else if (iterator instanceof VfsResourceIterator) {
+                        ((VfsResourceIterator)iterator).readAhead(executor, parallelism);
+                    } else {
+                        ((BundleResourceIterator)iterator).readAhead(executor, parallelism,
+                            isScanCacheUsed() ? scanCache : null);
+                    }
+                    scan(iterator);
+                } finally {
+                    executor.shutdownNow();
+                }
+            } else {
+                scan(iterator);
+            }
+        } finally {
+            final ClassFileBuffer buffer = cpBuffer;
+            cpBuffer = null;
+            bufferPool.release(buffer);
+            flush();
+        }
+    }
+
+    private void scan(final ResourceIterator iterator) throws IOException {
+        // the scan cache is only used for ZIP/JAR file entries and bundle revisions
+        final ClassFileIterator classFiles = isScanCacheUsed() &&
+            iterator instanceof ClassFileIterator ? (ClassFileIterator)iterator : null;
+        final BundleResourceIterator bundles = isScanCacheUsed() &&
+            iterator instanceof BundleResourceIterator ?
+            (BundleResourceIterator)iterator : null;
+        // all annotations of a jar file, only collected if all entries are scanned
+        final Set<String> jarAnnotations;
+        if (classFiles == null) {
+            jarAnnotations = null;
+        } else {
+            classFiles.skipJarFiles(scanCache, matcher.exactNames());
+            jarAnnotations = classFiles.isFiltered() ? null : new HashSet<String>();
+        }
+        ScanCache.JarRecord record = null;
+        // identical jar files may share the same record, see ScanCache
+        File recordFile = null;
+        String recordId = null;
+        try {
+            InputStream stream;
+            while ((stream = iterator.next()) != null) {
+                if (classFiles != null) {
+                    final File zipFile = classFiles.getZipFile();
+                    if (record != null && zipFile != recordFile) {
+                        final ScanCache.JarRecord previous = record;
+                        record = null;
+                        release(previous, recordFile, jarAnnotations);
+                    }
+                    if (record == null && zipFile != null) {
+                        // blocks if the ZIP/JAR file is scanned by another thread
+                        record = scanCache.acquire(zipFile);
+                        recordFile = zipFile;
+                    }
+                } else if (bundles != null) {
+                    final String id = bundles.getCacheId();
+                    if (record != null && !id.equals(recordId)) {
+                        final ScanCache.JarRecord previous = record;
+                        record = null;
+                        release(previous, null, null);
+                    }
+                    if (record == null) {
+                        record = scanCache.acquire(id, bundles.getCacheKey());
+                        recordId = id;
+                    }
+                }
+                if (record == null) {
+                    detect(stream, iterator);
+                } else {
+                    // the entries of a bundle revision never change, so no CRC is needed
+                    final String name = classFiles == null ?
+                        bundles.getName() : classFiles.getZipEntry().getName();
+                    final long crc = classFiles == null ?
+                        -1 : classFiles.getZipEntry().getCrc();
+                    ClassSummary summary = record.get(name, crc);
+                    if (summary == null) {
+                        scanCache.miss();
+                        summary = summarize(stream, iterator);
+                        record.put(name, crc, summary);
+                    } else {
+                        // InputStream is not used, closing is handled by ZipFileIterator
+                        scanCache.hit();
+                    }
+                    if (jarAnnotations != null) {
+                        jarAnnotations.addAll(Arrays.asList(summary.annotations));
+                    }
+                    replay(summary);
+                }
+                // names are decoded lazily, so only trim after the ClassFile is processed
+                bufferPool.trim(cpBuffer);
+                // a scan started by detectAsync() is stopped if it is cancelled
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Scan interrupted");
+                }
+            }
+            // all entries of the last jar file are scanned
+            if (record != null) {
+                final ScanCache.JarRecord previous = record;
+                record = null;
+                release(previous, recordFile, jarAnnotations);
+            }
+        } finally {
+            if (record != null) {
+                scanCache.release(record);
+            }
+        }
+    }
+
+    private <T> Future<T> submit(final Executor executor, final Callable<T> scan) {
+        final FutureTask<T> task = new FutureTask<T>(scan) {
+            @Override
+            protected void done() {
+                // also called if the scan is cancelled before it is started, the consumer
+                // must never wait for a scan which never runs
+                if (nameReporter instanceof AnnotationHitQueue) {
+                    ((AnnotationHitQueue)nameReporter).finish(isCancelled());
+                }
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            task.cancel(false);
+            throw ex;
         }
-        if (typeReporter == null && fieldReporter == null && methodReporter == null) {
-            throw new AssertionError("No reporter defined");
+        return task;
+    }
+
+    private void checkCollector(final ScanResult.Collector collector) {
+        if (collector == null || collector != nameReporter) {
+            throw new IllegalArgumentException(
+                "Collector is not the reporter of this AnnotationDetector");
         }
     }
 
-    /**
-     * Report all Java ClassFile files available on the class path.
-     *
-     * @see #detect(File...)
-     */
-    public void detect() throws IOException {
-        detect(new ClassFileIterator());
+    // a cached ClassSummary does not contain the annotation element values or references
+    private boolean isScanCacheUsed() {
+        return scanCache != null && !spec.hasFilters() && references == null;
     }
 
     /**
-     * Report all Java ClassFile files available on the class path within
-     * the specified packages and sub packages.
-     *
-     * @see #detect(File...)
+     * Release the {@code JarRecord} of a completely scanned jar file, storing the
+     * {@link JarSummary} of the jar file if all its entries are scanned.
      */
-    public void detect(final String... packageNames) throws IOException {
-        final String[] pkgNameFilter = new String[packageNames.length];
-        for (int i = 0; i < pkgNameFilter.length; ++i) {
-            pkgNameFilter[i] = packageNames[i].replace('.', '/');
-            if (!pkgNameFilter[i].endsWith("/")) {
-                pkgNameFilter[i] = pkgNameFilter[i].concat("/");
+    private void release(final ScanCache.JarRecord record, final File jarFile,
+        final Set<String> jarAnnotations) {
+
+        try {
+            if (jarAnnotations != null) {
+                scanCache.putSummary(jarFile, JarSummary.of(record.key, jarAnnotations));
+                jarAnnotations.clear();
             }
+        } finally {
+            scanCache.release(record);
         }
-        final Set<File> files = new HashSet<File>();
-        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
-        for (final String packageName : pkgNameFilter) {
-            final Enumeration<URL> resourceEnum = loader.getResources(packageName);
-            while (resourceEnum.hasMoreElements()) {
-                final URL url = resourceEnum.nextElement();
-                if ("file".equals(url.getProtocol())) {
-                    final File dir = toFile(url);
-                    if (dir.isDirectory()) {
-                        files.add(dir);
-                    } else {
-                        throw new AssertionError("Not a recognized file URL: " + url);
-                    }
-                } else if (url.getProtocol().startsWith("vfs")) {
-                    detect(new VfsResourceIterator(url));
-                } else {
-                    final File jarFile = toFile(openJarURLConnection(url).getJarFileURL());
-                    if (jarFile.isFile()) {
-                        files.add(jarFile);
-                    } else {
-                        throw new AssertionError("Not a File: " + jarFile);
-                    }
+    }
+
+    /**
+     * Read and inspect the given Java ClassFile stream.
+     * Return {@code true} if the stream is successfully parsed as Java ClassFile.
+     */
+    @SuppressWarnings("illegalcatch")
+    private boolean detect(final InputStream stream, final ResourceIterator iterator)
+        throws IOException {
+
+        try {
+            cpBuffer.readFrom(stream);
+            if (hasCafebabe(cpBuffer)) {
+                if (detect(cpBuffer)) {
+                    return true;
                 }
+                reportError(name(iterator), malformed);
+            } // else ignore
+        } catch (Throwable t) {
+            // catch all errors, for example a truncated ClassFile
+            reportError(name(iterator), t.toString());
+            if (!(stream instanceof FileInputStream)) {
+                // in case of an error we close the ZIP File here
+                stream.close();
+            }
+        } finally {
+            // closing InputStream from ZIP Entry is handled by ZipFileIterator
+            if (stream instanceof FileInputStream) {
+                stream.close();
             }
         }
-        if (DEBUG) {
-            print("Files to scan: %s", files);
-        }
-        if (!files.isEmpty()) {
-            // see http://shipilev.net/blog/2016/arrays-wisdom-ancients/#_conclusion
-            detect(new ClassFileIterator(files.toArray(new File[0]), pkgNameFilter));
-        }
+        return false;
     }
 
     /**
-     * Scan all Java ClassFile ({@code *.class}) files available in the specified files
-     * and/or directories.
-     * <p>
-     * In Java, the
-     * <a href="http://docs.oracle.com/javase/8/docs/technotes/tools/unix/classpath.html">
-     * Class path</a> contains directories (top level directory as package root) and/or
-     * jar files (including zip files).
-     * <p>
-     * Note that non-class files (files, not starting with the magic number
-     * {@code CAFEBABE} are silently ignored.
-     *
-     * @param filesOrDirectories Valid files are: jar files, Java *.class files (all other
-     * files are silently ignored) and directories which are package root directories
+     * Read the given Java ClassFile stream and return a {@code ClassSummary} holding all
+     * annotations, used by the {@link ScanCache}.
      */
-    public void detect(final File... filesOrDirectories) throws IOException {
-        if (DEBUG) {
-            print("detectFilesOrDirectories: %s", (Object)filesOrDirectories);
+    private ClassSummary summarize(final InputStream stream, final ResourceIterator iterator)
+        throws IOException {
+
+        summaryBuilder.reset();
+        collectSummary = true;
+        try {
+            return detect(stream, iterator) ?
+                summaryBuilder.build(typeName().replace('/', '.')) :
+                ClassSummary.EMPTY;
+        } finally {
+            collectSummary = false;
         }
-        detect(new ClassFileIterator(filesOrDirectories, null));
     }
 
-    // private
+    /**
+     * Report the requested annotations from the specified (cached) {@code ClassSummary}.
+     */
+    private void replay(final ClassSummary summary) {
+        for (int i = 0; i < summary.size(); ++i) {
+            final int match = matcher.match(summary.annotations[i]);
+            if (match != AnnotationMatcher.NO_MATCH) {
+                report(summary.kinds[i], match, summary.annotations[i], summary.typeName,
+                    summary.memberNames[i]);
+            }
+        }
+    }
 
-    private File toFile(final URL url) {
-        // only correct way to convert the URL to a File object, also see issue #16
-        // Do not use URLDecoder
+    /**
+     * Parse the specified in memory Java ClassFile, see {@link #detect(byte[])}.
+     */
+    @SuppressWarnings("illegalcatch")
+    private void detect(final String name, final ClassFileBuffer buffer) {
+        lock.lock();
         try {
-            return new File(url.toURI());
-        } catch (URISyntaxException ex) {
-            // we do not expect an URISyntaxException here
-            throw new AssertionError("Unable to convert URI to File: " + url);
+            if (hasCafebabe(buffer) && !detect(buffer)) {
+                reportError(name, malformed);
+            } // else ignore
+        } catch (Throwable t) {
+            // catch all errors, for example a truncated ClassFile
+            reportError(name, t.toString());
+        } finally {
+            flush();
+            unlock();
         }
     }
 
-    private JarURLConnection openJarURLConnection(final URL url) throws IOException {
-        final URL checkedUrl;
-        if ("zip".equals(url.getProtocol())) {
-            // WebLogic returns URL with "zip" protocol, returning a
-            // weblogic.utils.zip.ZipURLConnection when opened
-            // Easy fix is to convert this URL to jar URL
-            checkedUrl = new URL(url.toExternalForm().replace("zip:/", "jar:file:/"));
-        } else {
-            checkedUrl = url;
-        }
-        URLConnection urlConnection = checkedUrl.openConnection();
-        // GlassFish 4.1.1 is providing a URLConnection of type:
-        // http://svn.apache.org/viewvc/felix/trunk/framework/src/main/java/org/
-        // apache/felix/framework/URLHandlersBundleURLConnection.java?view=markup
-        // Which does _not_ extend JarURLConnection.
-        // This bit of reflection allows us to call the getLocalURL method which
-        // actually returns a URL to a jar file.
-        if (checkedUrl.getProtocol().startsWith("bundle")) {
-            try {
-                final Method m = urlConnection.getClass().getDeclaredMethod("getLocalURL");
-                if (!m.isAccessible()) {
-                    m.setAccessible(true);
-                }
-                final URL jarUrl = (URL)m.invoke(urlConnection);
-                urlConnection = jarUrl.openConnection();
-            } catch (Exception ex) {
-                throw new AssertionError("Couldn't read jar file URL from bundle: " + ex);
-            }
+    private static String name(final ResourceIterator iterator) {
+        if (iterator instanceof ClassFileIterator) {
+            return ((ClassFileIterator)iterator).getName();
         }
-        if (urlConnection instanceof JarURLConnection) {
-            return (JarURLConnection)urlConnection;
-        } else {
-            throw new AssertionError(
-                "Unknown URLConnection type: " + urlConnection.getClass().getName());
+        return iterator instanceof BundleResourceIterator ?
+            ((BundleResourceIterator)iterator).getName() : null;
+    }
+
+    private void reportError(final String name, final String message) {
+        ++errorCount;
+        if (errorReporter != null) {
+            errorReporter.reportError(name, message);
         }
     }
 
-    @SuppressWarnings("illegalcatch")
-    public void detect(final ResourceIterator iterator) throws IOException {
-        InputStream stream;
-        while ((stream = iterator.next()) != null) {
-            try {
-                cpBuffer.readFrom(stream);
-                if (hasCafebabe(cpBuffer)) {
-                    detect(cpBuffer);
-                } // else ignore
-            } catch (Throwable t) {
-                // catch all errors
-                if (!(stream instanceof FileInputStream)) {
-                    // in case of an error we close the ZIP File here
-                    stream.close();
-                }
-            } finally {
-                // closing InputStream from ZIP Entry is handled by ZipFileIterator
-                if (stream instanceof FileInputStream) {
-                    stream.close();
-                }
+    private static ExecutorService newExecutor(final int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable,
+                    "annotation-detector-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
             }
-        }
+
+        });
     }
 
     private boolean hasCafebabe(final ClassFileBuffer buffer) throws IOException {
@@ -399,17 +1310,36 @@ public final class AnnotationDetector {
 
     /**
      * Inspect the given (Java) class file in streaming mode.
+     * Return {@code false} if the class file is malformed, see {@link #malformed}.
      */
-    private void detect(final DataInput di) throws IOException {
-        readVersion(di);
-        readConstantPoolEntries(di);
-        readAccessFlags(di);
-        readThisClass(di);
-        readSuperClass(di);
-        readInterfaces(di);
-        readFields(di);
-        readMethods(di);
-        readAttributes(di, 'T', typeReporter == null);
+    private boolean detect(final ClassFileBuffer buffer) throws IOException {
+        malformed = null;
+        classFile = buffer;
+        readVersion(buffer);
+        readConstantPoolEntries(buffer);
+        if (malformed != null) {
+            return false;
+        }
+        readAccessFlags(buffer);
+        readThisClass(buffer);
+        readSuperClass(buffer);
+        readInterfaces(buffer);
+        // a summary for the ScanCache holds all annotations
+        if (parseFieldAnnotations || collectSummary) {
+            readFields(buffer);
+        } else {
+            skipMembers(buffer);
+        }
+        if (parseMethodAnnotations || collectSummary) {
+            readMethods(buffer);
+        } else {
+            skipMembers(buffer);
+        }
+        readAttributes(buffer, 'T', !parseTypeAnnotations && !collectSummary);
+        if (references != null && malformed == null) {
+            collectReferences();
+        }
+        return malformed == null;
     }
 
     private void readVersion(final DataInput di) throws IOException {
@@ -425,7 +1355,22 @@ public final class AnnotationDetector {
     private void readConstantPoolEntries(final DataInput di) throws IOException {
         final int count = di.readUnsignedShort();
         constantPool = new Object[count];
-        for (int i = 1; i < count; ++i) {
+        visibleAnnotationsIndex = 0;
+        invisibleAnnotationsIndex = 0;
+        if (utf8Offsets.length < count) {
+            utf8Offsets = new int[count];
+        } else {
+            Arrays.fill(utf8Offsets, 0, count, 0);
+        }
+        if (references != null) {
+            if (cpTags == null || cpTags.length < count) {
+                cpTags = new byte[Math.max(count, 256)];
+                cpRefs = new int[2 * cpTags.length];
+            } else {
+                Arrays.fill(cpTags, 0, count, (byte)0);
+            }
+        }
+        for (int i = 1; i < count && malformed == null; ++i) {
             if (readConstantPoolEntry(di, i)) {
                 // double slot
                 ++i;
@@ -440,19 +1385,33 @@ public final class AnnotationDetector {
         throws IOException {
 
         final int tag = di.readUnsignedByte();
+        if (references != null) {
+            cpTags[index] = (byte)tag;
+        }
         switch (tag) {
             case CP_METHOD_TYPE:
+            case CP_MODULE:
+            case CP_PACKAGE:
                 di.skipBytes(2);  // readUnsignedShort()
                 return false;
             case CP_METHOD_HANDLE:
                 di.skipBytes(3);
                 return false;
-            case CP_INTEGER:
-            case CP_FLOAT:
             case CP_REF_FIELD:
             case CP_REF_METHOD:
             case CP_REF_INTERFACE:
             case CP_NAME_AND_TYPE:
+                if (references == null) {
+                    di.skipBytes(4); // readUnsignedShort() * 2
+                } else {
+                    // class and name and type index, or name and descriptor index
+                    cpRefs[2 * index] = di.readUnsignedShort();
+                    cpRefs[2 * index + 1] = di.readUnsignedShort();
+                }
+                return false;
+            case CP_INTEGER:
+            case CP_FLOAT:
+            case CP_DYNAMIC:
             case CP_INVOKE_DYNAMIC:
                 di.skipBytes(4); // readInt() / readFloat() / readUnsignedShort() * 2
                 return false;
@@ -461,7 +1420,7 @@ public final class AnnotationDetector {
                 di.skipBytes(8); // readLong() / readDouble()
                 return true;
             case CP_UTF8:
-                constantPool[index] = di.readUTF();
+                readUtf8Entry(di, index);
                 return false;
             case CP_CLASS:
             case CP_STRING:
@@ -469,8 +1428,78 @@ public final class AnnotationDetector {
                 constantPool[index] = di.readUnsignedShort();
                 return false;
             default:
-                throw new ClassFormatError(
-                    "Unkown tag value for constant pool entry: " + tag);
+                malformed = "Unknown tag value for constant pool entry: " + tag;
+                return false;
+        }
+    }
+
+    /**
+     * Add the class and member references in the constant pool of the parsed ClassFile
+     * to the {@code ReferenceIndex.Collector}.
+     */
+    private void collectReferences() throws IOException {
+        final String self = typeName().replace('/', '.');
+        final int from = references.addClass(self);
+        for (int i = 1; i < constantPool.length; ++i) {
+            final int tag = cpTags[i];
+            if (tag == CP_CLASS) {
+                final String name = referencedClassName(i);
+                if (name != null && !name.equals(self)) {
+                    references.addClassReference(from, name);
+                }
+            } else if (tag == CP_REF_FIELD || tag == CP_REF_METHOD ||
+                tag == CP_REF_INTERFACE) {
+
+                final String owner = referencedClassName(cpRefs[2 * i]);
+                final int nameAndType = cpRefs[2 * i + 1];
+                if (owner != null && !owner.equals(self) &&
+                    nameAndType < constantPool.length &&
+                    cpTags[nameAndType] == CP_NAME_AND_TYPE) {
+
+                    references.addMemberReference(from, owner, utf8(cpRefs[2 * nameAndType]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the fully qualified name of the CONSTANT_Class entry at the specified index,
+     * the element type for arrays or {@code null} for arrays of primitive types.
+     */
+    private String referencedClassName(final int index) throws IOException {
+        if (index >= constantPool.length || cpTags[index] != CP_CLASS) {
+            return null;
+        }
+        String name = resolveUtf8(index);
+        if (name == null) {
+            return null;
+        }
+        if (name.startsWith("[")) {
+            // for example "[[Ljava/lang/String;" or "[I"
+            final int dimensions = name.lastIndexOf('[') + 1;
+            if (name.charAt(dimensions) != 'L') {
+                return null;
+            }
+            name = name.substring(dimensions + 1, name.length() - 1);
+        }
+        return name.replace('/', '.');
+    }
+
+    /**
+     * Only record the offset of a CONSTANT_Utf8 entry, it is decoded when needed, see
+     * {@link #utf8(int)}.
+     */
+    private void readUtf8Entry(final DataInput di, final int index) throws IOException {
+        utf8Offsets[index] = classFile.position();
+        final int length = di.readUnsignedShort();
+        di.skipBytes(length);
+        // attribute names are compared by index, see readAttributes()
+        if (length == RUNTIME_VISIBLE_ANNOTATIONS.length &&
+            utf8Equals(index, RUNTIME_VISIBLE_ANNOTATIONS, false)) {
+            visibleAnnotationsIndex = index;
+        } else if (length == RUNTIME_INVISIBLE_ANNOTATIONS.length &&
+            utf8Equals(index, RUNTIME_INVISIBLE_ANNOTATIONS, false)) {
+            invisibleAnnotationsIndex = index;
         }
     }
 
@@ -479,9 +1508,9 @@ public final class AnnotationDetector {
     }
 
     private void readThisClass(final DataInput di) throws IOException {
-        typeName = resolveUtf8(di);
+        thisClassIndex = di.readUnsignedShort();
         if (DEBUG) {
-            print("read type '%s'", typeName);
+            print("read type '%s'", typeName());
         }
     }
 
@@ -499,14 +1528,15 @@ public final class AnnotationDetector {
         if (DEBUG) {
             print("field count = %d", count);
         }
-        for (int i = 0; i < count; ++i) {
+        for (int i = 0; i < count && malformed == null; ++i) {
             readAccessFlags(di);
-            memberName = resolveUtf8(di);
-            final String descriptor = resolveUtf8(di);
-            readAttributes(di, 'F', fieldReporter == null);
+            memberNameIndex = di.readUnsignedShort();
+            final int descriptorIndex = di.readUnsignedShort();
             if (DEBUG) {
-                print("Field: %s, descriptor: %s", memberName, descriptor);
+                print("Field: %s, descriptor: %s",
+                    utf8(memberNameIndex), utf8(descriptorIndex));
             }
+            readAttributes(di, 'F', false);
         }
     }
 
@@ -515,13 +1545,30 @@ public final class AnnotationDetector {
         if (DEBUG) {
             print("method count = %d", count);
         }
-        for (int i = 0; i < count; ++i) {
+        for (int i = 0; i < count && malformed == null; ++i) {
             readAccessFlags(di);
-            memberName = resolveUtf8(di);
-            final String descriptor = resolveUtf8(di);
-            readAttributes(di, 'M', methodReporter == null);
+            memberNameIndex = di.readUnsignedShort();
+            final int descriptorIndex = di.readUnsignedShort();
             if (DEBUG) {
-                print("Method: %s, descriptor: %s", memberName, descriptor);
+                print("Method: %s, descriptor: %s",
+                    utf8(memberNameIndex), utf8(descriptorIndex));
+            }
+            readAttributes(di, 'M', false);
+        }
+    }
+
+    /**
+     * Skip all fields or methods. Only the attribute lengths are read, no names are
+     * resolved.
+     */
+    private void skipMembers(final DataInput di) throws IOException {
+        final int count = di.readUnsignedShort();
+        for (int i = 0; i < count; ++i) {
+            di.skipBytes(6); // access_flags, name_index, descriptor_index
+            final int attributeCount = di.readUnsignedShort();
+            for (int j = 0; j < attributeCount; ++j) {
+                di.skipBytes(2); // attribute_name_index
+                di.skipBytes(di.readInt());
             }
         }
     }
@@ -533,17 +1580,17 @@ public final class AnnotationDetector {
         if (DEBUG) {
             print("attribute count (%s) = %d", reporterType, count);
         }
-        for (int i = 0; i < count; ++i) {
-            final String name = resolveUtf8(di);
+        for (int i = 0; i < count && malformed == null; ++i) {
+            final int nameIndex = di.readUnsignedShort();
             // in bytes, use this to skip the attribute info block
             final int length = di.readInt();
-            if (!skipReporting &&
-                ("RuntimeVisibleAnnotations".equals(name) ||
-                "RuntimeInvisibleAnnotations".equals(name))) {
+            if (!skipReporting && nameIndex != 0 &&
+                (nameIndex == visibleAnnotationsIndex ||
+                nameIndex == invisibleAnnotationsIndex)) {
                 readAnnotations(di, reporterType);
             } else {
                 if (DEBUG) {
-                    print("skip attribute %s", name);
+                    print("skip attribute %s", utf8(nameIndex));
                 }
                 di.skipBytes(length);
             }
@@ -558,45 +1605,193 @@ public final class AnnotationDetector {
         if (DEBUG) {
             print("annotation count (%s) = %d", reporterType, count);
         }
-        for (int i = 0; i < count; ++i) {
-            final String rawTypeName = readAnnotation(di);
-            final Class<? extends Annotation> type = annotations.get(rawTypeName);
-            if (type == null) {
-                continue;
-            }
-            final String externalTypeName = typeName.replace('/', '.');
-            switch (reporterType) {
-                case 'T':
+        for (int i = 0; i < count && malformed == null; ++i) {
+            final int typeIndex = di.readUnsignedShort();
+            final int match = collectSummary ?
+                AnnotationMatcher.NO_MATCH : matchUtf8(matcher, typeIndex);
+            final boolean accepted = readAnnotationElements(di,
+                match == AnnotationMatcher.NO_MATCH ? null : predicates(typeIndex));
+            if (malformed != null) {
+                return;
+            }
+            if (collectSummary) {
+                summaryBuilder.add(reporterType, memberName(reporterType), utf8(typeIndex));
+            } else if (match != AnnotationMatcher.NO_MATCH && accepted) {
+                // the annotation type name is only decoded if reported by name
+                report(reporterType, match, annotationTypes == null ? utf8(typeIndex) : null,
+                    typeName().replace('/', '.'), memberName(reporterType));
+            }
+        }
+    }
+
+    private void report(final char reporterType, final int match, final String rawTypeName,
+        final String externalTypeName, final String member) {
+
+        if (nameReporter != null || batch != null) {
+            final ElementType target = elementType(reporterType);
+            final String annotationName =
+                rawTypeName.substring(1, rawTypeName.length() - 1).replace('/', '.');
+            final String memberName = reporterType == 'T' ? null : member;
+            if (batch == null) {
+                nameReporter.reportAnnotation(target, annotationName, externalTypeName,
+                    memberName);
+            } else {
+                batch.add(target, annotationName, externalTypeName, memberName);
+                if (batch.isFull()) {
+                    flush();
+                }
+            }
+            return;
+        }
+        final Class<? extends Annotation> type = annotationTypes[match];
+        // if a (cached) ClassSummary is replayed, not all reporters may be defined
+        switch (reporterType) {
+            case 'T':
+                if (typeReporter != null) {
                     typeReporter.reportTypeAnnotation(type, externalTypeName);
-                    break;
-                case 'F':
-                    fieldReporter.reportFieldAnnotation(type, externalTypeName, memberName);
-                    break;
-                case 'M':
-                    methodReporter.reportMethodAnnotation(type, externalTypeName, memberName);
-                    break;
-                default:
-                    throw new AssertionError("reporterType=" + reporterType);
+                }
+                break;
+            case 'F':
+                if (fieldReporter != null) {
+                    fieldReporter.reportFieldAnnotation(type, externalTypeName, member);
+                }
+                break;
+            case 'M':
+                if (methodReporter != null) {
+                    methodReporter.reportMethodAnnotation(type, externalTypeName, member);
+                }
+                break;
+            default:
+                throw new AssertionError("reporterType=" + reporterType);
+        }
+    }
+
+    /**
+     * Report the pending hits to the {@code BatchReporter}, if any.
+     */
+    private void flush() {
+        if (batch != null && batch.size() > 0) {
+            try {
+                batchReporter.reportBatch(batch);
+            } finally {
+                batch.clear();
             }
         }
     }
 
-    private String readAnnotation(final DataInput di) throws IOException {
-        final String rawTypeName = resolveUtf8(di);
+    private static char reporterType(final ElementType target) {
+        switch (target) {
+            case TYPE:
+                return 'T';
+            case FIELD:
+                return 'F';
+            default:
+                return 'M';
+        }
+    }
+
+    private static ElementType elementType(final char reporterType) {
+        switch (reporterType) {
+            case 'T':
+                return ElementType.TYPE;
+            case 'F':
+                return ElementType.FIELD;
+            case 'M':
+                return ElementType.METHOD;
+            default:
+                throw new AssertionError("reporterType=" + reporterType);
+        }
+    }
+
+    /**
+     * Return the value predicates of the annotation type name at the specified constant
+     * pool index, or {@code null} if none.
+     */
+    private ValuePredicate[] predicates(final int typeIndex) {
+        if (!spec.hasFilters()) {
+            return null;
+        }
+        final int match = matchUtf8(spec.filterMatcher(), typeIndex);
+        return match == AnnotationMatcher.NO_MATCH ? null : spec.filterPredicates(match);
+    }
+
+    /**
+     * Read the element value pairs of an annotation. Return {@code true} if all specified
+     * value predicates (may be {@code null}) are satisfied.
+     */
+    private boolean readAnnotationElements(final DataInput di,
+        final ValuePredicate[] predicates) throws IOException {
+
         // num_element_value_pairs
         final int count = di.readUnsignedShort();
         if (DEBUG) {
             print("annotation elements count: %d", count);
         }
-        for (int i = 0; i < count; ++i) {
+        long satisfied = 0;
+        for (int i = 0; i < count && malformed == null; ++i) {
+            final int nameIndex = di.readUnsignedShort();
             if (DEBUG) {
-                print("element '%s'", resolveUtf8(di));
-            } else {
-                di.skipBytes(2);
+                print("element '%s'", utf8(nameIndex));
+            }
+            if (predicates != null) {
+                for (int p = 0; p < predicates.length; ++p) {
+                    if (utf8Equals(nameIndex, predicates[p].element, false) &&
+                        test(predicates[p], classFile.position())) {
+                        satisfied |= 1L << p;
+                    }
+                }
             }
             readAnnotationElementValue(di);
         }
-        return rawTypeName;
+        return predicates == null || Long.bitCount(satisfied) == predicates.length;
+    }
+
+    /**
+     * Evaluate the specified predicate on the element_value at the specified position in
+     * the ClassFile, without moving the read pointer.
+     */
+    private boolean test(final ValuePredicate predicate, final int position) {
+        final byte[] bytes = classFile.array();
+        final int tag = bytes[position];
+        switch (predicate.kind) {
+            case ValuePredicate.EQUAL_TO:
+                return tag == STRING &&
+                    utf8Equals(u2(bytes, position + 1), predicate.operand, false);
+            case ValuePredicate.STARTS_WITH:
+                return tag == STRING &&
+                    utf8Equals(u2(bytes, position + 1), predicate.operand, true);
+            case ValuePredicate.ENUM_CONSTANT:
+                // u2 type_name_index, u2 const_name_index
+                return tag == ENUM &&
+                    utf8Equals(u2(bytes, position + 3), predicate.operand, false);
+            case ValuePredicate.ARRAY_CONTAINS:
+                return tag == ARRAY && arrayContains(bytes, position + 1, predicate.operand);
+            default:
+                throw new AssertionError("kind=" + predicate.kind);
+        }
+    }
+
+    private boolean arrayContains(final byte[] bytes, final int position, final byte[] value) {
+        final int count = u2(bytes, position);
+        int p = position + 2;
+        for (int i = 0; i < count; ++i) {
+            final int tag = bytes[p];
+            if (tag == STRING) {
+                if (utf8Equals(u2(bytes, p + 1), value, false)) {
+                    return true;
+                }
+                p += 3;
+            } else if (tag == ENUM) {
+                if (utf8Equals(u2(bytes, p + 3), value, false)) {
+                    return true;
+                }
+                p += 5;
+            } else {
+                // arrays of other element types never contain the value
+                return false;
+            }
+        }
+        return false;
     }
 
 
@@ -624,17 +1819,19 @@ public final class AnnotationDetector {
                 di.skipBytes(2);
                 break;
             case ANNOTATION:
-                readAnnotation(di);
+                di.skipBytes(2); // type_index
+                readAnnotationElements(di, null);
                 break;
             case ARRAY:
                 final int count = di.readUnsignedShort();
-                for (int i = 0; i < count; ++i) {
+                for (int i = 0; i < count && malformed == null; ++i) {
                     readAnnotationElementValue(di);
                 }
                 break;
             default:
-                throw new ClassFormatError("Not a valid annotation element type tag: 0x" +
-                    Integer.toHexString(tag));
+                malformed = "Not a valid annotation element type tag: 0x" +
+                    Integer.toHexString(tag);
+                break;
         }
     }
 
@@ -642,17 +1839,16 @@ public final class AnnotationDetector {
      * Look up the String value, identified by the u2 index value from constant pool
      * (direct or indirect).
      */
-    private String resolveUtf8(final DataInput di) throws IOException {
-        final int index = di.readUnsignedShort();
+    private String resolveUtf8(final int index) throws IOException {
         final Object value = constantPool[index];
         final String s;
         if (value instanceof Integer) {
-            s = (String)constantPool[(Integer)value];
+            s = utf8((Integer)value);
             if (DEBUG) {
                 print("resolveUtf8(%d): %d --> %s", index, value, s);
             }
         } else {
-            s = (String)value;
+            s = utf8(index);
             if (DEBUG) {
                 print("resolveUtf8(%d): %s", index, s);
             }
@@ -661,6 +1857,100 @@ public final class AnnotationDetector {
         return s;
     }
 
+    /**
+     * Return the 'raw' name of this interface or class (using '/' instead of '.' in
+     * package name).
+     */
+    private String typeName() throws IOException {
+        return resolveUtf8(thisClassIndex);
+    }
+
+    /**
+     * Return the name of the current field or method, {@code null} for type annotations.
+     */
+    private String memberName(final char reporterType) throws IOException {
+        return reporterType == 'T' ? null : utf8(memberNameIndex);
+    }
+
+    /**
+     * Return the (decoded) CONSTANT_Utf8 entry at the specified constant pool index.
+     * Entries are decoded only once.
+     */
+    private String utf8(final int index) throws IOException {
+        final int offset = utf8Offset(index);
+        if (offset == 0) {
+            return null;
+        }
+        String s = (String)constantPool[index];
+        if (s == null) {
+            s = classFile.readUTF(offset);
+            constantPool[index] = s;
+        }
+        return s;
+    }
+
+    /**
+     * Match the CONSTANT_Utf8 entry at the specified constant pool index, holding a "raw"
+     * annotation type name, without decoding it.
+     */
+    private int matchUtf8(final AnnotationMatcher annotationMatcher, final int index) {
+        final int offset = utf8Offset(index);
+        if (offset == 0) {
+            return AnnotationMatcher.NO_MATCH;
+        }
+        final byte[] bytes = classFile.array();
+        return annotationMatcher.match(bytes, offset + 2, u2(bytes, offset));
+    }
+
+    /**
+     * Return {@code true} if the CONSTANT_Utf8 entry at the specified constant pool index
+     * is equal to (or starts with) the specified modified UTF-8 bytes, without decoding it.
+     */
+    private boolean utf8Equals(final int index, final byte[] value, final boolean prefix) {
+        final int offset = utf8Offset(index);
+        if (offset == 0) {
+            return false;
+        }
+        final byte[] bytes = classFile.array();
+        final int length = u2(bytes, offset);
+        if (prefix ? length < value.length : length != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; ++i) {
+            if (bytes[offset + 2 + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int u2(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xff) << 8 | bytes[offset + 1] & 0xff;
+    }
+
+    private int utf8Offset(final int index) {
+        if (index < 1 || index >= constantPool.length || utf8Offsets[index] == 0) {
+            malformed = "Not a CONSTANT_Utf8 entry: " + index;
+            return 0;
+        }
+        return utf8Offsets[index];
+    }
+
+    /**
+     * A ClassFile loaded while this detector is in use, see {@link #detectLoaded}.
+     */
+    private static final class LoadedClass {
+
+        final String className;
+        final byte[] bytes;
+
+        LoadedClass(final String className, final byte[] bytes) {
+            this.className = className;
+            this.bytes = bytes;
+        }
+
+    }
+
     /**
      * Helper method for simple (debug) logging.
      */
@@ -0,0 +1,112 @@
+/* AnnotationHit.java
+ *
+ * Created: 2026-10-19 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.lang.annotation.ElementType;
+
+/**
+ * {@code AnnotationHit} is a single detected annotation on a type, field or method.
+ * Instances are immutable.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+public final class AnnotationHit {
+
+    private final ElementType target;
+    private final String annotationName;
+    private final String className;
+    private final String memberName;
+
+    /**
+     * Create a new {@code AnnotationHit}, see
+     * {@link AnnotationDetector.NameReporter#reportAnnotation(ElementType, String, String,
+     * String)}.
+     */
+    public AnnotationHit(final ElementType target, final String annotationName,
+        final String className, final String memberName) {
+
+        this.target = target;
+        this.annotationName = annotationName;
+        this.className = className;
+        this.memberName = memberName;
+    }
+
+    /**
+     * Return {@code TYPE}, {@code FIELD} or {@code METHOD}.
+     */
+    public ElementType getTarget() {
+        return target;
+    }
+
+    /**
+     * Return the fully qualified name of the annotation type.
+     */
+    public String getAnnotationName() {
+        return annotationName;
+    }
+
+    /**
+     * Return the fully qualified name of the annotated type.
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Return the name of the annotated field or method, {@code null} for type annotations.
+     */
+    public String getMemberName() {
+        return memberName;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof AnnotationHit)) {
+            return false;
+        }
+        final AnnotationHit other = (AnnotationHit)obj;
+        return target == other.target &&
+            annotationName.equals(other.annotationName) &&
+            className.equals(other.className) &&
+            (memberName == null ? other.memberName == null :
+                memberName.equals(other.memberName));
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = target.hashCode();
+        hash = 31 * hash + annotationName.hashCode();
+        hash = 31 * hash + className.hashCode();
+        return 31 * hash + (memberName == null ? 0 : memberName.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return "@" + annotationName + " on " + target + " " +
+            (memberName == null ? className : className + '#' + memberName);
+    }
+
+}
@@ -0,0 +1,139 @@
+/* AnnotationHitQueue.java
+ *
+ * Created: 2026-10-19 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.lang.annotation.ElementType;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@code AnnotationHitQueue} is a {@link AnnotationDetector.NameReporter} handing over the
+ * detected annotations from a scan started by
+ * {@link AnnotationDetector#detectAsync(java.util.concurrent.Executor, String...)} to a
+ * consuming thread, as they are detected.
+ * <p>
+ * The queue is bounded. If the consumer falls behind, the scanning thread blocks until
+ * there is room again (back pressure). Typical usage:
+ * <pre>
+ * final AnnotationHitQueue hits = new AnnotationHitQueue(256, "javax.persistence.*");
+ * new AnnotationDetector(hits).detectAsync(executor, "com.example");
+ * AnnotationHit hit;
+ * while ((hit = hits.take()) != null) {
+ *     ... // process hit, the scan continues in the background
+ * }
+ * </pre>
+ * An instance can only be used for a single scan.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+public final class AnnotationHitQueue implements AnnotationDetector.NameReporter {
+
+    // marks the end of the scan
+    private static final AnnotationHit END = new AnnotationHit(ElementType.TYPE, "", "", null);
+
+    private final String[] annotationNames;
+    private final BlockingQueue<AnnotationHit> queue;
+    // set when the scan is finished, after which no hits are added anymore
+    private final AtomicBoolean ended = new AtomicBoolean();
+    // only accessed by the consuming thread
+    private boolean finished;
+
+    /**
+     * Create a new {@code AnnotationHitQueue}.
+     *
+     * @param capacity the maximum number of hits not yet taken by the consumer
+     * @param annotationNames the selectors of the annotation types to report, see
+     * {@link AnnotationDetector.NameReporter#annotationNames()}
+     */
+    public AnnotationHitQueue(final int capacity, final String... annotationNames) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1: " + capacity);
+        }
+        this.annotationNames = annotationNames.clone();
+        this.queue = new ArrayBlockingQueue<AnnotationHit>(capacity);
+    }
+
+    @Override
+    public String[] annotationNames() {
+        return annotationNames.clone();
+    }
+
+    @Override
+    public void reportAnnotation(final ElementType target, final String annotationName,
+        final String className, final String memberName) {
+
+        if (!ended.get()) {
+            put(new AnnotationHit(target, annotationName, className, memberName));
+        }
+    }
+
+    /**
+     * Return the next detected annotation, waiting if necessary until one is available.
+     * Return {@code null} if the scan is finished (successfully or not, see the
+     * {@code Future} returned by {@code detectAsync}) and all hits are taken.
+     */
+    public AnnotationHit take() throws InterruptedException {
+        if (finished) {
+            return null;
+        }
+        final AnnotationHit hit = queue.take();
+        if (hit == END) {
+            finished = true;
+            return null;
+        }
+        return hit;
+    }
+
+    // package private
+
+    /**
+     * Called when the scan is finished, by the scanning thread or, if the scan is
+     * cancelled, by the cancelling thread. Only the first call has effect.
+     */
+    void finish(final boolean cancelled) {
+        if (!ended.compareAndSet(false, true)) {
+            return;
+        }
+        if (cancelled) {
+            // discard all pending hits so the consumer is released, never block
+            while (!queue.offer(END)) {
+                queue.clear();
+            }
+        } else {
+            put(END);
+        }
+    }
+
+    // private
+
+    private void put(final AnnotationHit hit) {
+        try {
+            queue.put(hit);
+        } catch (InterruptedException ex) {
+            // the scan is cancelled, it is stopped after the current ClassFile
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+/* AnnotationMatcher.java
+ *
+ * Created: 2026-10-18 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@code AnnotationMatcher} matches "raw" annotation type names (for example
+ * {@code "Ljava/lang/Deprecated;"}) against a set of annotation selectors, directly on the
+ * modified UTF-8 bytes of the constant pool. Annotation type names which do not match are
+ * never decoded.
+ * <p>
+ * Supported selectors (using the external, dotted notation):
+ * <ul>
+ * <li>a fully qualified annotation type name, for example
+ * {@code "javax.persistence.Entity"};
+ * <li>a package name followed by {@code ".*"}, for example {@code "javax.persistence.*"},
+ * matching all annotation types in the package and its sub packages;
+ * <li>{@code "*"}, matching all annotation types.
+ * </ul>
+ * The selectors are compiled into a byte trie. Matching a name takes at most one trie
+ * step per byte, independent of the number of selectors. Instances are immutable.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+final class AnnotationMatcher {
+
+    static final int NO_MATCH = -1;
+
+    // per node: the index of the first edge and the number of edges
+    private final int[] firstEdge;
+    private final int[] edgeCount;
+    // per edge, sorted by label per node: the byte label and the target node
+    private final byte[] labels;
+    private final int[] targets;
+    // per node: the selector of a name ending at this node, or NO_MATCH
+    private final int[] exact;
+    // per node: the selector matching all names starting with this node, or NO_MATCH
+    private final int[] prefix;
+    // the "raw" type names of the exact selectors, null if wildcards are used
+    private final Collection<String> exactNames;
+
+    private AnnotationMatcher(final List<Map<Byte, Integer>> children, final int[] exact,
+        final int[] prefix, final Collection<String> exactNames) {
+
+        final int nodes = children.size();
+        firstEdge = new int[nodes];
+        edgeCount = new int[nodes];
+        int edges = 0;
+        for (final Map<Byte, Integer> edgeMap : children) {
+            edges += edgeMap.size();
+        }
+        labels = new byte[edges];
+        targets = new int[edges];
+        int e = 0;
+        for (int node = 0; node < nodes; ++node) {
+            firstEdge[node] = e;
+            edgeCount[node] = children.get(node).size();
+            // TreeMap, so the labels are sorted (signed byte order)
+            for (final Map.Entry<Byte, Integer> entry : children.get(node).entrySet()) {
+                labels[e] = entry.getKey();
+                targets[e] = entry.getValue();
+                ++e;
+            }
+        }
+        this.exact = Arrays.copyOf(exact, nodes);
+        this.prefix = Arrays.copyOf(prefix, nodes);
+        this.exactNames = exactNames;
+    }
+
+    /**
+     * Compile the specified selectors. The value returned by the {@code match} methods is
+     * the index of the matching selector. If more than one selector matches, a fully
+     * qualified name takes precedence over the most specific package selector.
+     */
+    static AnnotationMatcher compile(final String... selectors) {
+        final List<Map<Byte, Integer>> children = new ArrayList<Map<Byte, Integer>>();
+        children.add(new TreeMap<Byte, Integer>());
+        int[] exact = new int[64];
+        int[] prefix = new int[64];
+        Arrays.fill(exact, NO_MATCH);
+        Arrays.fill(prefix, NO_MATCH);
+        final List<String> names = new ArrayList<String>(selectors.length);
+        boolean wildcards = false;
+        for (int i = 0; i < selectors.length; ++i) {
+            final String selector = selectors[i];
+            final String raw;
+            final boolean isPrefix;
+            if ("*".equals(selector)) {
+                raw = "";
+                isPrefix = true;
+            } else if (selector.endsWith(".*")) {
+                raw = "L" + selector.substring(0, selector.length() - 1).replace('.', '/');
+                isPrefix = true;
+            } else {
+                raw = "L" + selector.replace('.', '/') + ";";
+                isPrefix = false;
+            }
+            int node = 0;
+            for (final byte b : modifiedUtf8(raw)) {
+                Integer next = children.get(node).get(b);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<Byte, Integer>());
+                    if (next == exact.length) {
+                        exact = grow(exact);
+                        prefix = grow(prefix);
+                    }
+                    children.get(node).put(b, next);
+                }
+                node = next;
+            }
+            // the first selector wins if a selector is specified more than once
+            if (isPrefix) {
+                wildcards = true;
+                if (prefix[node] == NO_MATCH) {
+                    prefix[node] = i;
+                }
+            } else {
+                names.add(raw);
+                if (exact[node] == NO_MATCH) {
+                    exact[node] = i;
+                }
+            }
+        }
+        return new AnnotationMatcher(children, exact, prefix, wildcards ? null : names);
+    }
+
+    /**
+     * Return the "raw" type names of all selectors, or {@code null} if wildcard selectors
+     * are used.
+     */
+    Collection<String> exactNames() {
+        return exactNames;
+    }
+
+    /**
+     * Match the "raw" type name, given as modified UTF-8 bytes. Return the index of the
+     * matching selector or {@link #NO_MATCH}.
+     */
+    int match(final byte[] bytes, final int offset, final int length) {
+        int node = 0;
+        int match = prefix[0];
+        for (int i = offset; i < offset + length; ++i) {
+            node = next(node, bytes[i]);
+            if (node < 0) {
+                return match;
+            }
+            if (prefix[node] != NO_MATCH) {
+                match = prefix[node];
+            }
+        }
+        return exact[node] == NO_MATCH ? match : exact[node];
+    }
+
+    /**
+     * Match the specified "raw" type name, for example {@code "Ljava/lang/Deprecated;"}.
+     */
+    int match(final String rawTypeName) {
+        int node = 0;
+        int match = prefix[0];
+        for (int i = 0; i < rawTypeName.length(); ++i) {
+            final char c = rawTypeName.charAt(i);
+            if (c == 0 || c > 0x7F) {
+                // not encoded as a single byte, rare
+                final byte[] bytes = modifiedUtf8(rawTypeName);
+                return match(bytes, 0, bytes.length);
+            }
+            node = next(node, (byte)c);
+            if (node < 0) {
+                return match;
+            }
+            if (prefix[node] != NO_MATCH) {
+                match = prefix[node];
+            }
+        }
+        return exact[node] == NO_MATCH ? match : exact[node];
+    }
+
+    /**
+     * Return the modified UTF-8 encoding, as used in the constant pool, of the specified
+     * String.
+     */
+    static byte[] modifiedUtf8(final String s) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(s.length() + 2);
+        try {
+            new DataOutputStream(bytes).writeUTF(s);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("String too long: " + s.length(), ex);
+        }
+        // skip the u2 length
+        return Arrays.copyOfRange(bytes.toByteArray(), 2, bytes.size());
+    }
+
+    // private
+
+    private int next(final int node, final byte label) {
+        // binary search in the sorted labels of the node, mostly only one edge
+        int low = firstEdge[node];
+        int high = low + edgeCount[node] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (labels[mid] < label) {
+                low = mid + 1;
+            } else if (labels[mid] > label) {
+                high = mid - 1;
+            } else {
+                return targets[mid];
+            }
+        }
+        return -1;
+    }
+
+    private static int[] grow(final int[] array) {
+        final int[] grown = Arrays.copyOf(array, array.length * 2);
+        Arrays.fill(grown, array.length, grown.length, NO_MATCH);
+        return grown;
+    }
+
+}
@@ -0,0 +1,387 @@
+/* BundleResourceIterator.java
+ *
+ * Created: 2026-10-19 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWiring;
+
+/**
+ * {@code BundleResourceIterator} is a {@link ResourceIterator} for OSGi bundles. The
+ * ClassFiles are listed using {@link BundleWiring#findEntries(String, String, int)} and
+ * read directly from the bundle, so no (local) jar file is required. Typical usage:
+ * <pre>
+ * new AnnotationDetector(reporter)
+ *     .scanCache(ScanCache.getShared())
+ *     .parallelism(4)
+ *     .detect(new BundleResourceIterator(Arrays.asList(context.getBundles()),
+ *         new String[] {"com/acme/"}));
+ * </pre>
+ * The bundles are scanned in the specified order. The entries of attached fragments are
+ * returned with their host bundle, so fragments themselves are skipped, as are bundles
+ * which are not resolved. Note that only the entries of the bundle itself are returned,
+ * not the content of embedded jar files on the {@code Bundle-ClassPath}.
+ * <p>
+ * If a {@link ScanCache} is used, the annotations are cached per bundle revision. A bundle
+ * revision is immutable, so a cached bundle revision is never read again. If concurrent
+ * reading is enabled (see {@link AnnotationDetector#parallelism(int)}), several bundles
+ * are listed concurrently and the entries of the bundles which are not cached are read
+ * concurrently.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+public final class BundleResourceIterator extends ResourceIterator {
+
+    private final List<Bundle> bundles;
+    private final String[] pkgNameFilter;
+    private int bundleIndex;
+
+    // the current bundle revision and its ClassFile entries
+    private Bundle bundle;
+    private BundleRevision revision;
+    private List<URL> entries;
+    private int entryIndex;
+    private InputStream current;
+
+    // only used when reading concurrently, the read ahead entries per bundle
+    private ExecutorService executor;
+    private int maxPending;
+    // bundles available from the cache are not read ahead
+    private ScanCache cache;
+    private final LinkedList<Future<Listing>> pending = new LinkedList<Future<Listing>>();
+    private byte[][] contents;
+
+    /**
+     * Create a new {@code BundleResourceIterator} returning the ClassFiles of all
+     * specified bundles.
+     * <p>
+     * If the (optional) package filter is defined, only class files staring with one of the
+     * defined package names are returned.
+     * NOTE: package names must be defined in the native format (using '/' instead of '.').
+     */
+    public BundleResourceIterator(final Collection<Bundle> bundles,
+        final String[] pkgNameFilter) {
+
+        this.bundles = new ArrayList<Bundle>(bundles);
+        this.pkgNameFilter = pkgNameFilter;
+    }
+
+    /**
+     * Return the entry name of the Java ClassFile returned from the last call to
+     * {@link #next()}, for example {@code "com/acme/Foo.class"}.
+     */
+    public String getName() {
+        return entryName(entries.get(entryIndex - 1));
+    }
+
+    /**
+     * Return the bundle of the Java ClassFile returned from the last call to
+     * {@link #next()}.
+     */
+    public Bundle getBundle() {
+        return bundle;
+    }
+
+    @Override
+    public InputStream next() throws IOException {
+        close(current);
+        current = null;
+        while (true) {
+            if (entries != null && entryIndex < entries.size()) {
+                final int index = entryIndex++;
+                if (contents != null) {
+                    final byte[] bytes = contents[index];
+                    // release memory as soon as possible
+                    contents[index] = null;
+                    return new ByteArrayInputStream(bytes);
+                }
+                current = new EntryStream(entries.get(index));
+                return current;
+            }
+            if (!nextBundle()) {
+                return null;
+            }
+        }
+    }
+
+    // package private
+
+    /**
+     * Read the entries of several bundles concurrently, using the specified
+     * {@code ExecutorService} with the specified number of threads. The entries of bundle
+     * revisions available from the specified (optional) {@code ScanCache} are not read.
+     */
+    void readAhead(final ExecutorService executorService, final int threads,
+        final ScanCache scanCache) {
+
+        this.executor = executorService;
+        this.cache = scanCache;
+        // keep all workers busy, but limit the memory used by read ahead entries
+        this.maxPending = threads * 2;
+    }
+
+    /**
+     * Return the {@link ScanCache} id of the bundle of the last returned ClassFile, or
+     * {@code null} if nothing is returned.
+     */
+    String getCacheId() {
+        return bundle == null ? null : cacheId(bundle);
+    }
+
+    /**
+     * Return the {@link ScanCache} key of the bundle revision of the last returned
+     * ClassFile. Changes if the bundle is updated.
+     */
+    String getCacheKey() {
+        return cacheKey(bundle, revision);
+    }
+
+    // private
+
+    private static String cacheId(final Bundle b) {
+        return "bundle:" + b.getBundleId();
+    }
+
+    private static String cacheKey(final Bundle b, final BundleRevision r) {
+        // stable across JVM's, so also valid for a persisted cache
+        return cacheId(b) + '|' + b.getLastModified() + '|' + r.getSymbolicName() + '|' +
+            r.getVersion();
+    }
+
+    private boolean nextBundle() throws IOException {
+        entries = null;
+        contents = null;
+        if (executor == null) {
+            while (bundleIndex < bundles.size()) {
+                final Listing result = list(bundles.get(bundleIndex++), false);
+                if (result != null) {
+                    select(result);
+                    return true;
+                }
+            }
+            return false;
+        }
+        while (true) {
+            while (pending.size() < maxPending && bundleIndex < bundles.size()) {
+                final Bundle b = bundles.get(bundleIndex++);
+                pending.add(executor.submit(new Callable<Listing>() {
+                    @Override
+                    public Listing call() throws IOException {
+                        return list(b, true);
+                    }
+                }));
+            }
+            if (pending.isEmpty()) {
+                return false;
+            }
+            final Listing result = get(pending.removeFirst());
+            if (result != null) {
+                select(result);
+                return true;
+            }
+        }
+    }
+
+    private void select(final Listing listing) {
+        bundle = listing.bundle;
+        revision = listing.revision;
+        entries = listing.urls;
+        contents = listing.contents;
+        entryIndex = 0;
+    }
+
+    /**
+     * List (and optionally read) the ClassFile entries of the specified bundle. Return
+     * {@code null} if the bundle is skipped.
+     */
+    private Listing list(final Bundle b, final boolean read) throws IOException {
+        final BundleWiring wiring = b.adapt(BundleWiring.class);
+        if (wiring == null ||
+            (wiring.getRevision().getTypes() & BundleRevision.TYPE_FRAGMENT) != 0) {
+            // not resolved or a fragment
+            return null;
+        }
+        // the entries by name, package filters may overlap
+        final Map<String, URL> found = new LinkedHashMap<String, URL>();
+        if (pkgNameFilter == null) {
+            add(wiring, "/", null, found);
+        } else {
+            for (final String filter : pkgNameFilter) {
+                final int slash = filter.lastIndexOf('/');
+                add(wiring, slash < 0 ? "/" : filter.substring(0, slash), filter, found);
+            }
+        }
+        final List<URL> urls = new ArrayList<URL>(found.values());
+        byte[][] bytes = null;
+        if (read && (cache == null ||
+            !cache.contains(cacheId(b), cacheKey(b, wiring.getRevision())))) {
+
+            bytes = new byte[urls.size()][];
+            for (int i = 0; i < bytes.length; ++i) {
+                bytes[i] = readFully(urls.get(i));
+            }
+        }
+        return new Listing(b, wiring.getRevision(), urls, bytes);
+    }
+
+    private static void add(final BundleWiring wiring, final String path,
+        final String filter, final Map<String, URL> found) {
+
+        final List<URL> urls =
+            wiring.findEntries(path, "*.class", BundleWiring.FINDENTRIES_RECURSE);
+        if (urls == null) {
+            return;
+        }
+        for (final URL url : urls) {
+            final String name = entryName(url);
+            if ((filter == null || name.startsWith(filter)) &&
+                !ClassFileIterator.isModuleOrPackageInfo(name)) {
+
+                found.put(name, url);
+            }
+        }
+    }
+
+    private static String entryName(final URL url) {
+        final String path = url.getPath();
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    private static byte[] readFully(final URL url) throws IOException {
+        final InputStream in = url.openStream();
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(8 * 1024);
+            final byte[] buffer = new byte[8 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Listing get(final Future<Listing> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading bundle entries");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException)ex.getCause();
+            }
+            throw new IOException("Unable to read bundle entries", ex.getCause());
+        }
+    }
+
+    private static void close(final InputStream stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * The ClassFile entries of a single bundle revision.
+     */
+    private static final class Listing {
+
+        final Bundle bundle;
+        final BundleRevision revision;
+        final List<URL> urls;
+        // the contents of the entries, null if not read ahead
+        final byte[][] contents;
+
+        Listing(final Bundle bundle, final BundleRevision revision, final List<URL> urls,
+            final byte[][] contents) {
+
+            this.bundle = bundle;
+            this.revision = revision;
+            this.urls = urls;
+            this.contents = contents;
+        }
+
+    }
+
+    /**
+     * An {@code InputStream} opening the bundle entry on first use, so entries available
+     * from the {@link ScanCache} are never opened.
+     */
+    private static final class EntryStream extends InputStream {
+
+        private final URL url;
+        private InputStream in;
+
+        EntryStream(final URL url) {
+            this.url = url;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return open().read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            return open().read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+
+        private InputStream open() throws IOException {
+            if (in == null) {
+                in = url.openStream();
+            }
+            return in;
+        }
+
+    }
+
+}
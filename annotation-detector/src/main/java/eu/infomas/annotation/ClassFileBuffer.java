@@ -41,7 +41,8 @@ import java.io.InputStream;
 final class ClassFileBuffer implements DataInput {
     
     private byte[] buffer;
-    private int size; // the number of significant bytes read
+    private int start; // the offset of the ClassFile in the buffer, only used if wrapped
+    private int size; // the end of the significant bytes in the buffer
     private int pointer; // the "read pointer"
 
     /**
@@ -65,12 +66,43 @@ final class ClassFileBuffer implements DataInput {
         this.buffer = new byte[initialCapacity];
     }
 
+    /**
+     * Create a new, empty {@code ClassFileBuffer} using the specified byte array as
+     * (initial) buffer, see {@link ClassFileBufferPool}.
+     */
+    ClassFileBuffer(final byte[] buffer) {
+        if (buffer.length < 1) {
+            throw new IllegalArgumentException("buffer.length < 1: " + buffer.length);
+        }
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create a new {@code ClassFileBuffer} wrapping the specified part of a byte array,
+     * which holds a complete Java ClassFile. The bytes are not copied, so the byte array
+     * must not be modified while it is parsed. A wrapping {@code ClassFileBuffer} can not
+     * be (re)filled using {@link #readFrom(InputStream)}.
+     */
+    ClassFileBuffer(final byte[] classFile, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset + length > classFile.length) {
+            throw new IndexOutOfBoundsException(
+                "offset=" + offset + ", length=" + length + ", array=" + classFile.length);
+        }
+        this.buffer = classFile;
+        this.start = offset;
+        this.size = offset + length;
+        this.pointer = offset;
+    }
+
     /**
      * Clear and fill the buffer of this {@code ClassFileBuffer} with the
      * supplied byte stream.
      * The read pointer is reset to the start of the byte array.
      */
     public void readFrom(final InputStream in) throws IOException {
+        if (start != 0) {
+            throw new IllegalStateException("Wrapped ClassFile can not be filled");
+        }
         pointer = 0;
         size = 0;
         int n;
@@ -91,17 +123,50 @@ final class ClassFileBuffer implements DataInput {
         if (position < 0) {
             throw new IllegalArgumentException("position < 0: " + position);
         }
-        if (position > size) {
+        if (position > size - start) {
             throw new EOFException();
         }
-        this.pointer = position;
+        this.pointer = start + position;
+    }
+
+    /**
+     * Return the current offset of the "read pointer" in the internal buffer, see
+     * {@link #array()}. Only differs from the offset in the file if wrapped.
+     */
+    int position() {
+        return pointer;
     }
 
     /**
      * Return the size (in bytes) of this Java ClassFile file.
      */
     public int size() {
-        return size;
+        return size - start;
+    }
+
+    /**
+     * Return the current capacity (in bytes) of the internal buffer.
+     */
+    int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Return the internal buffer, used by {@link ClassFileBufferPool}.
+     */
+    byte[] array() {
+        return buffer;
+    }
+
+    /**
+     * Replace the internal buffer by the specified (smaller) byte array and clear this
+     * {@code ClassFileBuffer}.
+     */
+    void reset(final byte[] newBuffer) {
+        buffer = newBuffer;
+        start = 0;
+        size = 0;
+        pointer = 0;
     }
 
     // DataInput
@@ -127,7 +192,7 @@ final class ClassFileBuffer implements DataInput {
 
     @Override
     public int skipBytes(final int n) throws IOException {
-        seek(pointer + n);
+        seek(pointer - start + n);
         return n;
     }
 
@@ -223,6 +288,23 @@ final class ClassFileBuffer implements DataInput {
         return DataInputStream.readUTF(this);
     }
 
+    /**
+     * Read the (modified UTF-8) String at the specified offset in the internal buffer (see
+     * {@link #position()}), without changing the "read pointer".
+     */
+    String readUTF(final int position) throws IOException {
+        if (position < start || position > size) {
+            throw new EOFException();
+        }
+        final int current = pointer;
+        pointer = position;
+        try {
+            return readUTF();
+        } finally {
+            pointer = current;
+        }
+    }
+
     // private
 
     private int read() {
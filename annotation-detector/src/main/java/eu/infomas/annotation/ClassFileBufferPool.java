@@ -0,0 +1,177 @@
+/* ClassFileBufferPool.java
+ *
+ * Created: 2026-10-18 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code ClassFileBufferPool} is a pool of the byte arrays used by {@link ClassFileBuffer}
+ * to hold a Java ClassFile.
+ * <p>
+ * A buffer grows when a large ClassFile is read. To prevent a single (generated) ClassFile
+ * of several megabytes from pinning a large array, buffers with a capacity above the
+ * maximum retained capacity are dropped after use and replaced by a buffer of the default
+ * capacity. Buffers are first returned to the releasing thread, so repeated scans by the
+ * same thread reuse the same buffer. Otherwise they are shared by all threads, up to a
+ * maximum number of pooled buffers.
+ * <p>
+ * Only plain byte arrays are kept per thread, so the pool never prevents the class loader
+ * of this library from being garbage collected. Instances of this class are thread safe.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ * @see AnnotationDetector#bufferPool(ClassFileBufferPool)
+ */
+public final class ClassFileBufferPool {
+
+    // default (initial) capacity of a buffer, 8 KB
+    private static final int DEFAULT_CAPACITY = 8 * 1024;
+    private static final ClassFileBufferPool DEFAULT =
+        new ClassFileBufferPool(1024 * 1024, 16);
+
+    private final int maximumRetainedCapacity;
+    private final int maximumPooled;
+    private final ThreadLocal<byte[]> local = new ThreadLocal<byte[]>();
+    private final Queue<byte[]> shared = new ConcurrentLinkedQueue<byte[]>();
+    // ConcurrentLinkedQueue.size() is not a constant-time operation
+    private final AtomicInteger sharedCount = new AtomicInteger();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong allocationCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Create a new {@code ClassFileBufferPool} instance.
+     *
+     * @param maximumRetainedCapacity the maximum capacity in bytes of a buffer kept for
+     * reuse, larger buffers are dropped after use
+     * @param maximumPooled the maximum number of buffers shared by all threads, in addition
+     * to the buffer kept per thread
+     */
+    public ClassFileBufferPool(final int maximumRetainedCapacity, final int maximumPooled) {
+        if (maximumRetainedCapacity < DEFAULT_CAPACITY) {
+            throw new IllegalArgumentException("maximumRetainedCapacity < " +
+                DEFAULT_CAPACITY + ": " + maximumRetainedCapacity);
+        }
+        if (maximumPooled < 0) {
+            throw new IllegalArgumentException("maximumPooled < 0: " + maximumPooled);
+        }
+        this.maximumRetainedCapacity = maximumRetainedCapacity;
+        this.maximumPooled = maximumPooled;
+    }
+
+    /**
+     * Return the JVM wide default {@code ClassFileBufferPool} instance, retaining buffers
+     * up to 1 MB.
+     */
+    public static ClassFileBufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Return the maximum capacity in bytes of a buffer kept for reuse.
+     */
+    public int getMaximumRetainedCapacity() {
+        return maximumRetainedCapacity;
+    }
+
+    /**
+     * Return the number of buffers acquired from this pool.
+     */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * Return the number of buffers allocated because no pooled buffer was available. The
+     * difference with {@link #getAcquireCount()} is the number of reused buffers.
+     */
+    public long getAllocationCount() {
+        return allocationCount.get();
+    }
+
+    /**
+     * Return the number of buffers dropped, because their capacity exceeded the maximum
+     * retained capacity or because the pool was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Return the number of buffers currently shared by all threads, excluding the buffers
+     * kept per thread.
+     */
+    public int getPooledCount() {
+        return sharedCount.get();
+    }
+
+    // package private
+
+    ClassFileBuffer acquire() {
+        acquireCount.incrementAndGet();
+        byte[] buffer = local.get();
+        if (buffer != null) {
+            local.set(null);
+        } else {
+            buffer = shared.poll();
+            if (buffer != null) {
+                sharedCount.decrementAndGet();
+            } else {
+                allocationCount.incrementAndGet();
+                buffer = new byte[DEFAULT_CAPACITY];
+            }
+        }
+        return new ClassFileBuffer(buffer);
+    }
+
+    /**
+     * Replace the internal buffer of the specified {@code ClassFileBuffer} by a buffer of
+     * the default capacity if its capacity exceeds the maximum retained capacity. Called
+     * after every ClassFile, so an oversized buffer is not kept during the rest of a scan.
+     */
+    void trim(final ClassFileBuffer buffer) {
+        if (buffer.capacity() > maximumRetainedCapacity) {
+            droppedCount.incrementAndGet();
+            allocationCount.incrementAndGet();
+            buffer.reset(new byte[DEFAULT_CAPACITY]);
+        }
+    }
+
+    void release(final ClassFileBuffer buffer) {
+        final byte[] array = buffer.array();
+        buffer.reset(null);
+        if (array.length > maximumRetainedCapacity) {
+            droppedCount.incrementAndGet();
+        } else if (local.get() == null) {
+            local.set(array);
+        } else if (sharedCount.incrementAndGet() <= maximumPooled) {
+            shared.offer(array);
+        } else {
+            sharedCount.decrementAndGet();
+            droppedCount.incrementAndGet();
+        }
+    }
+
+}
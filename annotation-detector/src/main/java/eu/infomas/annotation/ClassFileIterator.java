@@ -26,6 +26,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 /**
@@ -42,6 +47,17 @@ public final class ClassFileIterator extends ResourceIterator {
     private final FileIterator fileIterator;
     private final String[] pkgNameFilter;
     private ZipFileIterator zipIterator;
+    private File zipFile;
+    // used to skip jar files which do not contain any of the requested annotations
+    private ScanCache scanCache;
+    private Collection<String> annotations;
+    // used to read the entries of large jar files concurrently
+    private ExecutorService executor;
+    private int parallelism;
+    // the names of all returned ClassFiles, only used when skipping shadowed ClassFiles
+    private Set<String> classNames;
+    // the resources reported while iterating, null if no resources are reported
+    private ResourceFilter resources;
 
     /**
      * Create a new {@code ClassFileIterator} returning all Java ClassFile files available
@@ -56,11 +72,13 @@ public final class ClassFileIterator extends ResourceIterator {
      * from the specified files and/or directories, including sub directories.
      * <p>
      * If the (optional) package filter is defined, only class files staring with one of the
-     * defined package names are returned.
+     * defined package names are returned. For directories, the package names are relative
+     * to the specified directory and sub directories outside these packages are never
+     * listed.
      * NOTE: package names must be defined in the native format (using '/' instead of '.').
      */
     public ClassFileIterator(final File[] filesOrDirectories, final String[] pkgNameFilter) {
-        this.fileIterator = new FileIterator(filesOrDirectories);
+        this.fileIterator = new FileIterator(filesOrDirectories, pkgNameFilter);
         this.pkgNameFilter = pkgNameFilter;
     }
 
@@ -75,6 +93,73 @@ public final class ClassFileIterator extends ResourceIterator {
             zipIterator.getEntry().getName();
     }
 
+    /**
+     * Skip all ZIP/JAR files of which the {@link JarSummary}, as available from the
+     * specified {@code ScanCache}, does not contain any of the specified "raw" annotation
+     * type names. No ZIP/JAR files are skipped if the type names are {@code null}.
+     */
+    void skipJarFiles(final ScanCache cache, final Collection<String> requested) {
+        this.scanCache = cache;
+        this.annotations = requested;
+    }
+
+    /**
+     * Read and inflate the entries of large ZIP/JAR files concurrently, using the specified
+     * {@code ExecutorService} with the specified number of threads.
+     */
+    void readAhead(final ExecutorService executorService, final int threads) {
+        this.executor = executorService;
+        this.parallelism = threads;
+    }
+
+    /**
+     * Skip every Java ClassFile with the same name (the path relative to its root directory
+     * or ZIP/JAR file) as a ClassFile already returned, so only the first one on the class
+     * path is returned, as the class loader would. For multi-release jars only the
+     * versioned ClassFile used by the running JVM is returned.
+     * <p>
+     * Shadowed files are skipped before they are opened or inflated.
+     */
+    void skipShadowedClasses() {
+        this.classNames = new HashSet<String>();
+    }
+
+    /**
+     * Report the resources (files and ZIP/JAR file entries, except ClassFiles) selected by
+     * the specified filter while iterating, so no second pass over the ZIP/JAR files is
+     * needed. Resources in ZIP/JAR files are reported independent of the package filter,
+     * directories outside the package filter are never listed.
+     * <p>
+     * No ZIP/JAR files are skipped using a {@code ScanCache} if resources are reported.
+     */
+    void reportResources(final ResourceFilter filter) {
+        this.resources = filter;
+    }
+
+    /**
+     * Return {@code true} if only a part of the ZIP/JAR file entries is returned, because
+     * a package filter is defined or shadowed ClassFiles are skipped.
+     */
+    boolean isFiltered() {
+        return pkgNameFilter != null || classNames != null;
+    }
+
+    /**
+     * Return the ZIP/JAR file entry of the Java ClassFile returned from the last call to
+     * {@link #next()} or {@code null} if it is a plain file.
+     */
+    ZipEntry getZipEntry() {
+        return zipIterator == null ? null : zipIterator.getEntry();
+    }
+
+    /**
+     * Return the ZIP/JAR file containing the Java ClassFile returned from the last call to
+     * {@link #next()} or {@code null} if it is a plain file.
+     */
+    File getZipFile() {
+        return zipIterator == null ? null : zipFile;
+    }
+
     @Override
     public InputStream next() throws IOException {
         while (true) {
@@ -86,10 +171,19 @@ public final class ClassFileIterator extends ResourceIterator {
                 } else {
                     final String name = file.getName();
                     if (name.endsWith(".class")) {
-                        return new FileInputStream(file);
+                        if (!isModuleOrPackageInfo(name) && !isShadowed(file)) {
+                            return new FileInputStream(file);
+                        }
+                    } else if (resources != null && !fileIterator.isRootFile() &&
+                        resources.accept(relativeName(file))) {
+                        resources.report(relativeName(file), new FileInputStream(file));
                     } else if (fileIterator.isRootFile() &&
-                        (endsWithIgnoreCase(name, ".jar") || isZipFile(file))) {
-                        zipIterator = new ZipFileIterator(new ZipFile(file), pkgNameFilter);
+                        (endsWithIgnoreCase(name, ".jar") || isZipFile(file)) &&
+                        !isSkipped(file)) {
+                        zipIterator = new ZipFileIterator(
+                            new ZipFile(file), pkgNameFilter, executor, parallelism,
+                            classNames, resources);
+                        zipFile = file;
                     } // else just ignore
                 }
             } else {
@@ -103,8 +197,55 @@ public final class ClassFileIterator extends ResourceIterator {
         }
     }
 
+    /**
+     * Return {@code true} if the specified file or entry name is the name of a
+     * {@code module-info.class} or {@code package-info.class} file. These ClassFiles do
+     * not define a type and are skipped without being opened.
+     */
+    static boolean isModuleOrPackageInfo(final String name) {
+        return endsWithFileName(name, "module-info.class") ||
+            endsWithFileName(name, "package-info.class");
+    }
+
     // private
 
+    private static boolean endsWithFileName(final String name, final String fileName) {
+        final int offset = name.length() - fileName.length();
+        return name.endsWith(fileName) &&
+            (offset == 0 || name.charAt(offset - 1) == '/' ||
+            name.charAt(offset - 1) == File.separatorChar);
+    }
+
+    private boolean isShadowed(final File file) {
+        if (classNames == null) {
+            return false;
+        }
+        return !classNames.add(relativeName(file));
+    }
+
+    /**
+     * Return the path of the specified file relative to its root directory, using '/' as
+     * separator.
+     */
+    private String relativeName(final File file) {
+        final int offset = FileIterator.relativeOffset(fileIterator.getRoot());
+        final String path = file.getPath();
+        final String name = path.length() > offset ? path.substring(offset) : file.getName();
+        return name.replace(File.separatorChar, '/');
+    }
+
+    private boolean isSkipped(final File file) {
+        // annotations is null if wildcard selectors are used, the class names of a skipped
+        // jar file are required to detect shadowed ClassFiles
+        // skipped jar files are not opened, so their resources can not be reported
+        if (scanCache == null || annotations == null || classNames != null ||
+            resources != null) {
+            return false;
+        }
+        final JarSummary summary = scanCache.getSummary(file);
+        return summary != null && !summary.mightContainAny(annotations);
+    }
+
     private boolean isZipFile(final File file) {
         DataInputStream in = null;
         try {
@@ -0,0 +1,374 @@
+/* ClassPathRoots.java
+ *
+ * Created: 2026-10-18 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * {@code ClassPathRoots} resolves (native) package names to the class path roots of a
+ * {@link ClassLoader}: root directories, jar files and VFS URL's. Package names are
+ * resolved to the root directory containing the package, so ClassFile names relative to
+ * the root are the same for directories and jar files.
+ * <p>
+ * Resolving a package requires a call to {@code ClassLoader.getResources()} and opening
+ * a {@link JarURLConnection} for every returned URL. Because the same packages are
+ * typically scanned over and over again, resolved roots are cached per class loader.
+ * The class loader is weakly referenced, so the cache never prevents a class loader (for
+ * example of an undeployed web application) from being garbage collected.
+ * <p>
+ * Optionally the {@link URLClassLoader} hierarchy is walked directly. In that case all
+ * jar files are only opened once to compute the packages they contain, after which all
+ * package lookups are answered from memory.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+final class ClassPathRoots {
+
+    /**
+     * The class path roots of a single package.
+     */
+    static final class Roots {
+
+        final Set<File> files = new LinkedHashSet<File>();
+        final Set<URL> vfsUrls = new LinkedHashSet<URL>();
+
+    }
+
+    private static final Map<ClassLoader, ClassPathRoots> CACHE =
+        new WeakHashMap<ClassLoader, ClassPathRoots>();
+
+    // never reference the class loader strongly, it is the key of the (weak) CACHE
+    private final Reference<ClassLoader> loaderRef;
+    private final Map<String, Roots> resourceRoots = new HashMap<String, Roots>();
+    private final Map<String, Roots> hierarchyRoots = new HashMap<String, Roots>();
+    // lazily initialized, null if the hierarchy can not be walked
+    private List<File> hierarchy;
+    private boolean hierarchyResolved;
+    private final Map<File, Set<String>> jarPackages = new HashMap<File, Set<String>>();
+
+    private ClassPathRoots(final ClassLoader loader) {
+        this.loaderRef = new WeakReference<ClassLoader>(loader);
+    }
+
+    /**
+     * Return the (cached) {@code ClassPathRoots} instance of the specified class loader.
+     * If the class loader is {@code null} (for example a context class loader which is not
+     * set), the system class loader is used.
+     */
+    static ClassPathRoots of(final ClassLoader classLoader) {
+        final ClassLoader loader =
+            classLoader == null ? ClassLoader.getSystemClassLoader() : classLoader;
+        synchronized (CACHE) {
+            ClassPathRoots roots = CACHE.get(loader);
+            if (roots == null) {
+                roots = new ClassPathRoots(loader);
+                CACHE.put(loader, roots);
+            }
+            return roots;
+        }
+    }
+
+    /**
+     * Remove all cached class path roots, for example after class path entries have been
+     * added to a class loader.
+     */
+    static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * Return the class path roots of the specified package.
+     *
+     * @param pkgName the native package name (using '/' instead of '.', ending with '/')
+     * @param walkHierarchy if {@code true} the {@link URLClassLoader} hierarchy is used to
+     * resolve the roots, with {@code ClassLoader.getResources()} as fall back if the
+     * hierarchy contains unknown class loaders
+     */
+    synchronized Roots resolve(final String pkgName, final boolean walkHierarchy)
+        throws IOException {
+
+        final ClassLoader loader = loaderRef.get();
+        if (loader == null) {
+            throw new IllegalStateException("ClassLoader is garbage collected");
+        }
+        if (walkHierarchy) {
+            if (!hierarchyResolved) {
+                hierarchy = hierarchy(loader);
+                hierarchyResolved = true;
+            }
+            if (hierarchy != null) {
+                Roots roots = hierarchyRoots.get(pkgName);
+                if (roots == null) {
+                    roots = resolveFromHierarchy(pkgName);
+                    hierarchyRoots.put(pkgName, roots);
+                }
+                return roots;
+            }
+        }
+        Roots roots = resourceRoots.get(pkgName);
+        if (roots == null) {
+            roots = resolveFromResources(loader, pkgName);
+            resourceRoots.put(pkgName, roots);
+        }
+        return roots;
+    }
+
+    // private
+
+    private Roots resolveFromResources(final ClassLoader loader, final String pkgName)
+        throws IOException {
+
+        final Roots roots = new Roots();
+        final Enumeration<URL> resourceEnum = loader.getResources(pkgName);
+        while (resourceEnum.hasMoreElements()) {
+            final URL url = resourceEnum.nextElement();
+            if ("file".equals(url.getProtocol())) {
+                final File dir = toFile(url);
+                if (dir.isDirectory()) {
+                    roots.files.add(root(dir, pkgName));
+                } else {
+                    throw new AssertionError("Not a recognized file URL: " + url);
+                }
+            } else if (url.getProtocol().startsWith("vfs")) {
+                roots.vfsUrls.add(url);
+            } else {
+                final File jarFile = toFile(openJarURLConnection(url).getJarFileURL());
+                if (jarFile.isFile()) {
+                    roots.files.add(jarFile);
+                } else {
+                    throw new AssertionError("Not a File: " + jarFile);
+                }
+            }
+        }
+        return roots;
+    }
+
+    private Roots resolveFromHierarchy(final String pkgName) throws IOException {
+        final Roots roots = new Roots();
+        for (final File root : hierarchy) {
+            if (root.isDirectory()) {
+                final File dir = new File(root, pkgName);
+                if (dir.isDirectory()) {
+                    roots.files.add(root);
+                }
+            } else if (packages(root).contains(pkgName)) {
+                roots.files.add(root);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Return all (native) package names available in the specified jar file, computed
+     * only once from the central directory of the jar file.
+     */
+    private Set<String> packages(final File jar) throws IOException {
+        Set<String> packages = jarPackages.get(jar);
+        if (packages == null) {
+            packages = new HashSet<String>();
+            final JarFile jarFile;
+            try {
+                jarFile = new JarFile(jar, false);
+            } catch (IOException ex) {
+                // not a jar file, silently ignored when scanning
+                jarPackages.put(jar, packages);
+                return packages;
+            }
+            try {
+                final Enumeration<? extends ZipEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    final String name = entries.nextElement().getName();
+                    // add all parent "directories", not all jars contain directory entries
+                    int i = name.lastIndexOf('/');
+                    while (i > 0 && packages.add(name.substring(0, i + 1))) {
+                        i = name.lastIndexOf('/', i - 1);
+                    }
+                }
+            } finally {
+                jarFile.close();
+            }
+            jarPackages.put(jar, packages);
+        }
+        return packages;
+    }
+
+    /**
+     * Return all class path roots of the specified class loader and its parents, in
+     * class loader delegation order (parent first), or {@code null} if the hierarchy
+     * contains a class loader of which the class path roots can not be determined.
+     */
+    private static List<File> hierarchy(final ClassLoader loader) throws IOException {
+        final List<List<File>> levels = new ArrayList<List<File>>();
+        for (ClassLoader cl = loader; cl != null; cl = cl.getParent()) {
+            final List<File> files = new ArrayList<File>();
+            if (cl instanceof URLClassLoader) {
+                for (final URL url : ((URLClassLoader)cl).getURLs()) {
+                    if (!"file".equals(url.getProtocol())) {
+                        return null;
+                    }
+                    files.add(toFile(url));
+                }
+            } else if (cl == ClassLoader.getSystemClassLoader()) {
+                // Java 9+, the application class loader is not an URLClassLoader
+                for (final String fileName :
+                    System.getProperty("java.class.path").split(File.pathSeparator)) {
+                    files.add(new File(fileName));
+                }
+            } else if (cl.getParent() != null) {
+                return null;
+            } // else Java 9+ platform class loader, JDK modules are not scanned
+            levels.add(files);
+        }
+        Collections.reverse(levels);
+        final Set<File> roots = new LinkedHashSet<File>();
+        for (final List<File> level : levels) {
+            for (final File file : level) {
+                addRoot(roots, file);
+            }
+        }
+        return new ArrayList<File>(roots);
+    }
+
+    /**
+     * Add the specified root and, like an {@link URLClassLoader} does, all jar files
+     * referenced from the "Class-Path" attribute in the manifest of a jar file.
+     */
+    private static void addRoot(final Set<File> roots, final File file) throws IOException {
+        if (!file.exists() || !roots.add(file) || !file.isFile()) {
+            return;
+        }
+        final JarFile jarFile;
+        try {
+            jarFile = new JarFile(file, false);
+        } catch (IOException ex) {
+            // not a jar file, silently ignored when scanning
+            return;
+        }
+        final String classPath;
+        try {
+            final Manifest manifest = jarFile.getManifest();
+            classPath = manifest == null ? null :
+                manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+        } finally {
+            jarFile.close();
+        }
+        if (classPath != null) {
+            final URL base = file.toURI().toURL();
+            for (final String entry : classPath.trim().split("\\s+")) {
+                if (entry.length() > 0) {
+                    final URL url = new URL(base, entry);
+                    if ("file".equals(url.getProtocol())) {
+                        addRoot(roots, toFile(url));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the root directory of the specified package directory.
+     */
+    private static File root(final File dir, final String pkgName) {
+        File root = dir;
+        for (int i = 0; i < pkgName.length(); ++i) {
+            if (pkgName.charAt(i) == '/' && root.getParentFile() != null) {
+                root = root.getParentFile();
+            }
+        }
+        return root;
+    }
+
+    private static File toFile(final URL url) {
+        // only correct way to convert the URL to a File object, also see issue #16
+        // Do not use URLDecoder
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException ex) {
+            // we do not expect an URISyntaxException here
+            throw new AssertionError("Unable to convert URI to File: " + url);
+        }
+    }
+
+    private static JarURLConnection openJarURLConnection(final URL url) throws IOException {
+        final URL checkedUrl;
+        if ("zip".equals(url.getProtocol())) {
+            // WebLogic returns URL with "zip" protocol, returning a
+            // weblogic.utils.zip.ZipURLConnection when opened
+            // Easy fix is to convert this URL to jar URL
+            checkedUrl = new URL(url.toExternalForm().replace("zip:/", "jar:file:/"));
+        } else {
+            checkedUrl = url;
+        }
+        URLConnection urlConnection = checkedUrl.openConnection();
+        // GlassFish 4.1.1 is providing a URLConnection of type:
+        // http://svn.apache.org/viewvc/felix/trunk/framework/src/main/java/org/
+        // apache/felix/framework/URLHandlersBundleURLConnection.java?view=markup
+        // Which does _not_ extend JarURLConnection.
+        // This bit of reflection allows us to call the getLocalURL method which
+        // actually returns a URL to a jar file.
+        if (checkedUrl.getProtocol().startsWith("bundle")) {
+            try {
+                final Method m = urlConnection.getClass().getDeclaredMethod("getLocalURL");
+                if (!m.isAccessible()) {
+                    m.setAccessible(true);
+                }
+                final URL jarUrl = (URL)m.invoke(urlConnection);
+                urlConnection = jarUrl.openConnection();
+            } catch (Exception ex) {
+                throw new AssertionError("Couldn't read jar file URL from bundle: " + ex);
+            }
+        }
+        if (urlConnection instanceof JarURLConnection) {
+            return (JarURLConnection)urlConnection;
+        } else {
+            throw new AssertionError(
+                "Unknown URLConnection type: " + urlConnection.getClass().getName());
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+/* ClassPreloader.java
+ *
+ * Created: 2026-10-19 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@code ClassPreloader} loads the classes found by a scan in parallel, so downstream code
+ * gets pre-resolved {@code Class} objects instead of calling {@code Class.forName()} for
+ * every detected class sequentially. Typical usage:
+ * <pre>
+ * final ScanResult result = ...;
+ * final ClassPreloader.Result classes = ClassPreloader.load(
+ *     Thread.currentThread().getContextClassLoader(), result.getClassNames(), false, 4);
+ * </pre>
+ * Classes can only be loaded in parallel if the class loader is registered as parallel
+ * capable (which is the case for the JDK class loaders since Java 7). Otherwise every
+ * class loading request holds the lock of the class loader and the classes are loaded
+ * by the calling thread. This can only be determined since Java 9, on older Java
+ * versions the class loader is assumed to be parallel capable.
+ * <p>
+ * Classes are always loaded in parallel without being initialized. If initialization is
+ * requested, the loaded classes are initialized afterwards by the calling thread, in the
+ * specified order: initializing classes with mutually dependent static initializers on
+ * different threads could deadlock.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+public final class ClassPreloader {
+
+    /**
+     * The outcome of {@link ClassPreloader#load(ClassLoader, Collection, boolean, int)}.
+     * Instances are immutable.
+     */
+    public static final class Result {
+
+        private final Map<String, Class<?>> classes;
+        private final Map<String, Throwable> failures;
+
+        private Result(final Map<String, Class<?>> classes,
+            final Map<String, Throwable> failures) {
+
+            this.classes = Collections.unmodifiableMap(classes);
+            this.failures = Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * Return the successfully loaded classes by name, in the specified order.
+         */
+        public Map<String, Class<?>> getClasses() {
+            return classes;
+        }
+
+        /**
+         * Return the reason why a class could not be loaded by name, for example a
+         * {@code ClassNotFoundException} or a {@code LinkageError}.
+         */
+        public Map<String, Throwable> getFailures() {
+            return failures;
+        }
+
+    }
+
+    // the number of classes loaded by a worker in one task
+    private static final int CHUNK_SIZE = 32;
+
+    private ClassPreloader() {
+    }
+
+    /**
+     * Load the specified classes, using at most the specified number of threads.
+     *
+     * @param loader the class loader used to load the classes
+     * @param classNames the fully qualified class names, duplicates are loaded once
+     * @param initialize {@code true} if the classes must be initialized (static
+     * initializers are executed, sequentially), see
+     * {@link Class#forName(String, boolean, ClassLoader)}
+     * @param threads the maximum number of threads
+     */
+    public static Result load(final ClassLoader loader, final Collection<String> classNames,
+        final boolean initialize, final int threads) throws InterruptedException {
+
+        return load(loader, classNames, initialize, threads, CHUNK_SIZE);
+    }
+
+    // package private
+
+    /**
+     * Load the specified classes, using at most the specified number of threads, every
+     * task loading at most 'chunkSize' classes.
+     */
+    static Result load(final ClassLoader loader, final Collection<String> classNames,
+        final boolean initialize, final int threads, final int chunkSize)
+        throws InterruptedException {
+
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads < 1: " + threads);
+        }
+        final List<String> names =
+            new ArrayList<String>(new LinkedHashSet<String>(classNames));
+        final Map<String, Object> loaded = new ConcurrentHashMap<String, Object>();
+        final int chunks = (names.size() + chunkSize - 1) / chunkSize;
+        final int n = Math.min(threads, chunks);
+        if (n <= 1 || !isParallelCapable(loader)) {
+            load(loader, names, initialize, loaded);
+        } else {
+            final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+            for (int i = 0; i < names.size(); i += chunkSize) {
+                final List<String> chunk =
+                    names.subList(i, Math.min(i + chunkSize, names.size()));
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        load(loader, chunk, false, loaded);
+                        return null;
+                    }
+                });
+            }
+            final ExecutorService executor = newExecutor(n);
+            try {
+                executor.invokeAll(tasks);
+            } finally {
+                executor.shutdownNow();
+            }
+            if (initialize) {
+                initialize(loader, names, loaded);
+            }
+        }
+        final Map<String, Class<?>> classes = new LinkedHashMap<String, Class<?>>();
+        final Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+        for (final String name : names) {
+            final Object value = loaded.get(name);
+            if (value instanceof Class) {
+                classes.put(name, (Class<?>)value);
+            } else {
+                failures.put(name, (Throwable)value);
+            }
+        }
+        return new Result(classes, failures);
+    }
+
+    // private
+
+    @SuppressWarnings("illegalcatch")
+    private static void load(final ClassLoader loader, final List<String> names,
+        final boolean initialize, final Map<String, Object> loaded) {
+
+        for (final String name : names) {
+            try {
+                loaded.put(name, Class.forName(name, initialize, loader));
+            } catch (Throwable t) {
+                // ClassNotFoundException, LinkageError, ExceptionInInitializerError, etc.
+                loaded.put(name, t);
+            }
+        }
+    }
+
+    /**
+     * Initialize the loaded classes sequentially, replacing a class by the reason of its
+     * initialization failure.
+     */
+    private static void initialize(final ClassLoader loader, final List<String> names,
+        final Map<String, Object> loaded) {
+
+        final List<String> classNames = new ArrayList<String>(names.size());
+        for (final String name : names) {
+            if (loaded.get(name) instanceof Class) {
+                classNames.add(name);
+            }
+        }
+        load(loader, classNames, true, loaded);
+    }
+
+    private static boolean isParallelCapable(final ClassLoader loader) {
+        if (loader == null) {
+            // bootstrap class loader
+            return true;
+        }
+        try {
+            // Java 9+
+            final Method method = ClassLoader.class.getMethod("isRegisteredAsParallelCapable");
+            return (Boolean)method.invoke(loader);
+        } catch (NoSuchMethodException ex) {
+            return true;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    private static ExecutorService newExecutor(final int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable,
+                    "annotation-detector-preload-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+    }
+
+}
@@ -0,0 +1,118 @@
+/* ClassSummary.java
+ *
+ * Created: 2026-10-18 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.util.Arrays;
+
+/**
+ * {@code ClassSummary} holds all annotations of a single Java ClassFile, independent of the
+ * annotations requested by a specific {@link AnnotationDetector.Reporter}.
+ * <p>
+ * Instances are immutable and are shared between {@code AnnotationDetector} instances (and
+ * threads) by the {@link ScanCache}.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+final class ClassSummary {
+
+    /**
+     * The summary of a resource which is not a (valid) Java ClassFile.
+     */
+    static final ClassSummary EMPTY = new ClassSummary(null, new char[0], new String[0],
+        new String[0]);
+
+    // the external type name (using '.' instead of '/'), null if EMPTY
+    final String typeName;
+    // 'T', 'F' or 'M', see AnnotationDetector#readAnnotations()
+    final char[] kinds;
+    // the field or method name, null for type annotations
+    final String[] memberNames;
+    // the "raw" annotation type name, for example "Ljava/lang/Deprecated;"
+    final String[] annotations;
+
+    private ClassSummary(final String typeName, final char[] kinds, final String[] memberNames,
+        final String[] annotations) {
+
+        this.typeName = typeName;
+        this.kinds = kinds;
+        this.memberNames = memberNames;
+        this.annotations = annotations;
+    }
+
+    int size() {
+        return kinds.length;
+    }
+
+    /**
+     * Return the approximate retained size of this summary in bytes, used for bounding the
+     * size of the {@link ScanCache}.
+     */
+    int weight() {
+        int weight = 32 + length(typeName) * 2 + kinds.length * 14;
+        for (int i = 0; i < kinds.length; ++i) {
+            weight += (length(memberNames[i]) + length(annotations[i])) * 2;
+        }
+        return weight;
+    }
+
+    private static int length(final String s) {
+        return s == null ? 0 : s.length() + 20;
+    }
+
+    /**
+     * Mutable, reusable builder of {@code ClassSummary} instances.
+     */
+    static final class Builder {
+
+        private char[] kinds = new char[16];
+        private String[] memberNames = new String[16];
+        private String[] annotations = new String[16];
+        private int size;
+
+        void reset() {
+            // release references
+            Arrays.fill(memberNames, 0, size, null);
+            Arrays.fill(annotations, 0, size, null);
+            size = 0;
+        }
+
+        void add(final char kind, final String memberName, final String annotation) {
+            if (size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, size * 2);
+                memberNames = Arrays.copyOf(memberNames, size * 2);
+                annotations = Arrays.copyOf(annotations, size * 2);
+            }
+            kinds[size] = kind;
+            memberNames[size] = kind == 'T' ? null : memberName;
+            annotations[size] = annotation;
+            ++size;
+        }
+
+        ClassSummary build(final String typeName) {
+            return new ClassSummary(typeName, Arrays.copyOf(kinds, size),
+                Arrays.copyOf(memberNames, size), Arrays.copyOf(annotations, size));
+        }
+
+    }
+
+}
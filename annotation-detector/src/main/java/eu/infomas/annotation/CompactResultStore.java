@@ -0,0 +1,479 @@
+/* CompactResultStore.java
+ *
+ * Created: 2026-10-18 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.annotation.Annotation;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * {@code CompactResultStore} is a {@link AnnotationDetector.Reporter} which stores all
+ * reported annotations in a compact, off-heap format. It is intended for very large scans
+ * (millions of classes), where collecting the results as {@code String} objects would
+ * exhaust the heap.
+ * <p>
+ * Class names and member names are stored only once, in a string table using the same
+ * "modified UTF-8" format as used by Java ClassFiles. Every reported annotation is stored
+ * as a record of three {@code int} values (12 bytes). Both the string table and the
+ * records are stored in direct (off-heap) {@link ByteBuffer}s or, optionally, in memory
+ * mapped files.
+ * <p>
+ * The records are indexed by annotation type, so {@link #replay(AnnotationDetector.Reporter)}
+ * only reads the records of the requested annotations. The index is (re)built on the first
+ * replay after new annotations have been stored, and uses one (on heap) {@code int} per
+ * record.
+ * <p>
+ * Usage:
+ * <pre>
+ * CompactResultStore store = new CompactResultStore(testReporter.annotations());
+ * new AnnotationDetector(store).detect(jarFiles);
+ * // report all stored Test annotations
+ * store.replay(testReporter);
+ * </pre>
+ * Instances are not thread safe.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+public final class CompactResultStore implements AnnotationDetector.TypeReporter,
+    AnnotationDetector.FieldReporter, AnnotationDetector.MethodReporter, Closeable {
+
+    // record: kind | annotation index << 2, class name, member name (-1 for types)
+    private static final int RECORD_SIZE = 12;
+    private static final int TYPE = 0;
+    private static final int FIELD = 1;
+    private static final int METHOD = 2;
+
+    private final Class<? extends Annotation>[] annotations;
+    private final Segment records;
+    private final Segment strings;
+    private int recordsSize;
+    private int stringsSize;
+
+    // (on heap) hash table of the string table, containing string offset + 1
+    private int[] slots = new int[1024];
+    private int[] hashes = new int[1024];
+    private int stringCount;
+    private byte[] scratch = new byte[256];
+
+    // the last stored class name, consecutive reports are typically for the same class
+    private String lastClassName;
+    private int lastClassOffset;
+
+    // the record numbers per annotation index, valid if indexedSize == recordsSize
+    private int[] indexOffsets;
+    private int[] indexRecords;
+    private int indexedSize = -1;
+
+    /**
+     * Create a new {@code CompactResultStore}, storing the results off-heap.
+     *
+     * @param annotations the annotations to report, see {@link #annotations()}
+     */
+    public CompactResultStore(final Class<? extends Annotation>[] annotations) {
+        this.annotations = annotations.clone();
+        this.records = new Segment(null, 64 * 1024);
+        this.strings = new Segment(null, 64 * 1024);
+    }
+
+    /**
+     * Create a new {@code CompactResultStore}, storing the results in memory mapped files
+     * ({@code hits.dat} and {@code strings.dat}) in the specified directory. Existing files
+     * are overwritten.
+     *
+     * @param directory the (existing) directory where the files are created
+     * @param annotations the annotations to report, see {@link #annotations()}
+     */
+    public CompactResultStore(final File directory,
+        final Class<? extends Annotation>[] annotations) throws IOException {
+
+        this.annotations = annotations.clone();
+        this.records = new Segment(open(new File(directory, "hits.dat")), 1024 * 1024);
+        this.strings = new Segment(open(new File(directory, "strings.dat")), 1024 * 1024);
+    }
+
+    /**
+     * Return the number of stored annotations.
+     */
+    public int size() {
+        return recordsSize / RECORD_SIZE;
+    }
+
+    /**
+     * Return the number of distinct class and member names in the string table.
+     */
+    public int getStringCount() {
+        return stringCount;
+    }
+
+    /**
+     * Return the (off-heap) size of all stored data in bytes.
+     */
+    public long getStoredBytes() {
+        return (long)recordsSize + stringsSize;
+    }
+
+    /**
+     * Report all stored annotations, requested by the specified {@code Reporter}, in the
+     * order they have been stored. Only the records of the requested annotations are read.
+     */
+    public void replay(final AnnotationDetector.Reporter reporter) {
+        final AnnotationDetector.TypeReporter typeReporter =
+            reporter instanceof AnnotationDetector.TypeReporter ?
+            (AnnotationDetector.TypeReporter)reporter : null;
+        final AnnotationDetector.FieldReporter fieldReporter =
+            reporter instanceof AnnotationDetector.FieldReporter ?
+            (AnnotationDetector.FieldReporter)reporter : null;
+        final AnnotationDetector.MethodReporter methodReporter =
+            reporter instanceof AnnotationDetector.MethodReporter ?
+            (AnnotationDetector.MethodReporter)reporter : null;
+        // determine the requested annotations only once
+        final boolean[] requested = new boolean[annotations.length];
+        for (final Class<? extends Annotation> a : reporter.annotations()) {
+            for (int i = 0; i < annotations.length; ++i) {
+                if (annotations[i] == a) {
+                    requested[i] = true;
+                }
+            }
+        }
+        index();
+        // the next position in the record list of every requested annotation
+        final int[] next = new int[annotations.length];
+        for (int i = 0; i < annotations.length; ++i) {
+            next[i] = requested[i] ? indexOffsets[i] : indexOffsets[i + 1];
+        }
+        final ByteBuffer buffer = records.buffer;
+        int cachedOffset = -1;
+        String className = null;
+        while (true) {
+            // merge the record lists, to report in storage order
+            int index = -1;
+            for (int i = 0; i < annotations.length; ++i) {
+                if (next[i] < indexOffsets[i + 1] &&
+                    (index < 0 || indexRecords[next[i]] < indexRecords[next[index]])) {
+
+                    index = i;
+                }
+            }
+            if (index < 0) {
+                break;
+            }
+            final int p = indexRecords[next[index]++] * RECORD_SIZE;
+            final int kindAndAnnotation = buffer.getInt(p);
+            final int classOffset = buffer.getInt(p + 4);
+            if (classOffset != cachedOffset) {
+                className = string(classOffset);
+                cachedOffset = classOffset;
+            }
+            switch (kindAndAnnotation & 3) {
+                case TYPE:
+                    if (typeReporter != null) {
+                        typeReporter.reportTypeAnnotation(annotations[index], className);
+                    }
+                    break;
+                case FIELD:
+                    if (fieldReporter != null) {
+                        fieldReporter.reportFieldAnnotation(annotations[index], className,
+                            string(buffer.getInt(p + 8)));
+                    }
+                    break;
+                case METHOD:
+                    if (methodReporter != null) {
+                        methodReporter.reportMethodAnnotation(annotations[index], className,
+                            string(buffer.getInt(p + 8)));
+                    }
+                    break;
+                default:
+                    throw new AssertionError("kind=" + (kindAndAnnotation & 3));
+            }
+        }
+    }
+
+    /**
+     * Close the memory mapped files, if used. Stored data is no longer accessible after
+     * calling this method.
+     */
+    @Override
+    public void close() throws IOException {
+        records.close();
+        strings.close();
+    }
+
+    // Reporter implementation
+
+    @Override
+    public Class<? extends Annotation>[] annotations() {
+        return annotations.clone();
+    }
+
+    @Override
+    public void reportTypeAnnotation(final Class<? extends Annotation> annotation,
+        final String className) {
+
+        store(TYPE, annotation, className, null);
+    }
+
+    @Override
+    public void reportFieldAnnotation(final Class<? extends Annotation> annotation,
+        final String className, final String fieldName) {
+
+        store(FIELD, annotation, className, fieldName);
+    }
+
+    @Override
+    public void reportMethodAnnotation(final Class<? extends Annotation> annotation,
+        final String className, final String methodName) {
+
+        store(METHOD, annotation, className, methodName);
+    }
+
+    // private
+
+    /**
+     * Build the index of the record numbers per annotation, if not up to date.
+     */
+    private void index() {
+        if (indexedSize == recordsSize) {
+            return;
+        }
+        final ByteBuffer buffer = records.buffer;
+        final int count = recordsSize / RECORD_SIZE;
+        final int[] offsets = new int[annotations.length + 1];
+        for (int r = 0; r < count; ++r) {
+            ++offsets[(buffer.getInt(r * RECORD_SIZE) >>> 2) + 1];
+        }
+        for (int i = 0; i < annotations.length; ++i) {
+            offsets[i + 1] += offsets[i];
+        }
+        final int[] position = Arrays.copyOf(offsets, annotations.length);
+        final int[] recordNumbers = new int[count];
+        for (int r = 0; r < count; ++r) {
+            recordNumbers[position[buffer.getInt(r * RECORD_SIZE) >>> 2]++] = r;
+        }
+        indexOffsets = offsets;
+        indexRecords = recordNumbers;
+        indexedSize = recordsSize;
+    }
+
+    private void store(final int kind, final Class<? extends Annotation> annotation,
+        final String className, final String memberName) {
+
+        int index = 0;
+        while (annotations[index] != annotation) {
+            ++index;
+        }
+        if (!className.equals(lastClassName)) {
+            lastClassOffset = intern(className);
+            lastClassName = className;
+        }
+        final int memberOffset = memberName == null ? -1 : intern(memberName);
+        final ByteBuffer buffer = records.ensure(recordsSize, RECORD_SIZE);
+        buffer.putInt(recordsSize, kind | index << 2);
+        buffer.putInt(recordsSize + 4, lastClassOffset);
+        buffer.putInt(recordsSize + 8, memberOffset);
+        recordsSize += RECORD_SIZE;
+    }
+
+    /**
+     * Return the offset of the specified {@code String} in the string table, adding it if
+     * not yet available.
+     */
+    private int intern(final String s) {
+        final int length = encode(s);
+        final int hash = s.hashCode();
+        final int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            if (hashes[slot] == hash && equals(slots[slot] - 1, length)) {
+                return slots[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // add to string table: u2 length, modified UTF-8 bytes (like CONSTANT_Utf8_info)
+        final int offset = stringsSize;
+        final ByteBuffer buffer = strings.ensure(offset, length + 2);
+        buffer.putShort(offset, (short)length);
+        final ByteBuffer target = buffer.duplicate();
+        target.position(offset + 2);
+        target.put(scratch, 0, length);
+        stringsSize += length + 2;
+        slots[slot] = offset + 1;
+        hashes[slot] = hash;
+        if (++stringCount * 2 > slots.length) {
+            rehash();
+        }
+        return offset;
+    }
+
+    private boolean equals(final int offset, final int length) {
+        final ByteBuffer buffer = strings.buffer;
+        if ((buffer.getShort(offset) & 0xFFFF) != length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (buffer.get(offset + 2 + i) != scratch[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        final int[] oldSlots = slots;
+        final int[] oldHashes = hashes;
+        slots = new int[oldSlots.length * 2];
+        hashes = new int[oldSlots.length * 2];
+        final int mask = slots.length - 1;
+        for (int i = 0; i < oldSlots.length; ++i) {
+            if (oldSlots[i] != 0) {
+                int slot = oldHashes[i] & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = oldSlots[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    /**
+     * Encode the specified {@code String} in modified UTF-8 into the scratch buffer and
+     * return the number of bytes.
+     */
+    private int encode(final String s) {
+        final int n = s.length();
+        if (scratch.length < n * 3) {
+            scratch = new byte[n * 3];
+        }
+        int length = 0;
+        for (int i = 0; i < n; ++i) {
+            final char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                scratch[length++] = (byte)c;
+            } else if (c <= 0x07FF) {
+                // also used for '\u0000'
+                scratch[length++] = (byte)(0xC0 | (c >> 6) & 0x1F);
+                scratch[length++] = (byte)(0x80 | c & 0x3F);
+            } else {
+                scratch[length++] = (byte)(0xE0 | (c >> 12) & 0x0F);
+                scratch[length++] = (byte)(0x80 | (c >> 6) & 0x3F);
+                scratch[length++] = (byte)(0x80 | c & 0x3F);
+            }
+        }
+        if (length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long: " + length + " bytes");
+        }
+        return length;
+    }
+
+    /**
+     * Decode the modified UTF-8 {@code String} at the specified offset of the string table.
+     */
+    private String string(final int offset) {
+        final ByteBuffer buffer = strings.buffer;
+        final int length = buffer.getShort(offset) & 0xFFFF;
+        final char[] chars = new char[length];
+        int n = 0;
+        int p = offset + 2;
+        final int end = p + length;
+        while (p < end) {
+            final int b = buffer.get(p++) & 0xFF;
+            if (b < 0x80) {
+                chars[n++] = (char)b;
+            } else if (b < 0xE0) {
+                chars[n++] = (char)((b & 0x1F) << 6 | buffer.get(p++) & 0x3F);
+            } else {
+                chars[n++] = (char)((b & 0x0F) << 12 | (buffer.get(p++) & 0x3F) << 6 |
+                    buffer.get(p++) & 0x3F);
+            }
+        }
+        return new String(chars, 0, n);
+    }
+
+    private static FileChannel open(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        return raf.getChannel();
+    }
+
+    /**
+     * A growable block of bytes, stored in a direct {@link ByteBuffer} or in a memory
+     * mapped file. Only absolute get and put methods are used.
+     */
+    private static final class Segment {
+
+        private final FileChannel channel;
+        private ByteBuffer buffer;
+
+        Segment(final FileChannel channel, final int capacity) {
+            this.channel = channel;
+            this.buffer = allocate(capacity);
+        }
+
+        /**
+         * Return the {@code ByteBuffer} with room for 'length' bytes at 'position'.
+         */
+        ByteBuffer ensure(final int position, final int length) {
+            final long required = (long)position + length;
+            if (required > buffer.capacity()) {
+                if (required > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("CompactResultStore is full");
+                }
+                final int capacity = (int)Math.min(Integer.MAX_VALUE,
+                    Math.max(required, buffer.capacity() * 2L));
+                final ByteBuffer grown = allocate(capacity);
+                if (channel == null) {
+                    final ByteBuffer source = buffer.duplicate();
+                    source.clear();
+                    source.limit(position);
+                    grown.put(source);
+                } // else the mapped file already contains the data
+                buffer = grown;
+            }
+            return buffer;
+        }
+
+        void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+        private ByteBuffer allocate(final int capacity) {
+            if (channel == null) {
+                return ByteBuffer.allocateDirect(capacity);
+            }
+            try {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } catch (IOException ex) {
+                throw new IllegalStateException("Unable to map file: " + ex, ex);
+            }
+        }
+
+    }
+
+}
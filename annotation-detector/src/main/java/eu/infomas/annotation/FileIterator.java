@@ -23,8 +23,10 @@ package eu.infomas.annotation;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -47,8 +49,10 @@ import java.util.NoSuchElementException;
 final class FileIterator {
 
     private final Deque<File> stack = new LinkedList<File>();
+    private final String[] pkgNameFilter;
     private int rootCount;
     private File current;
+    private File root;
     
     /**
      * Create a new {@code FileIterator} using the specified 'filesOrDirectories' as root.
@@ -61,6 +65,23 @@ final class FileIterator {
      * in the specified order (depth first)
      */
     FileIterator(final File... filesOrDirectories) {
+        this(filesOrDirectories, null);
+    }
+
+    /**
+     * Create a new {@code FileIterator} using the specified 'filesOrDirectories' as root,
+     * only returning the files within the specified packages.
+     * <p>
+     * Sub directories which can not contain any of the specified packages are never
+     * listed. The package names are relative to the root directories and must be defined
+     * in the native format, ending with a '/' (for example {@code "com/acme/api/"}).
+     *
+     * @param filesOrDirectories Zero or more {@link File} objects, which are iterated
+     * in the specified order (depth first)
+     * @param pkgNameFilter (optional) package names, root files are always returned
+     */
+    FileIterator(final File[] filesOrDirectories, final String[] pkgNameFilter) {
+        this.pkgNameFilter = pkgNameFilter;
         addReverse(filesOrDirectories);
         rootCount = stack.size();
     }
@@ -85,6 +106,17 @@ final class FileIterator {
         }
         return stack.size() < rootCount;
     }
+
+    /**
+     * Return the root file or directory, as specified in the constructor, of the last
+     * returned file.
+     */
+    public File getRoot() {
+        if (current == null) {
+            throw new NoSuchElementException();
+        }
+        return root;
+    }
     
     /**
      * Return the next {@link File} object or {@code null} if no more files are
@@ -98,11 +130,17 @@ final class FileIterator {
             return null;
         } else {
             current = stack.removeLast();
+            if (stack.size() < rootCount) {
+                root = current;
+            }
             if (current.isDirectory()) {
                 if (stack.size() < rootCount) {
                     rootCount = stack.size();
                 }
-                addReverse(current.listFiles());
+                final File[] files = current.listFiles();
+                if (files != null) {
+                    addReverse(pkgNameFilter == null ? files : accept(files));
+                }
                 return next();
             } else {
                 return current;
@@ -110,6 +148,39 @@ final class FileIterator {
         }
     }
 
+    /**
+     * Return the specified files (from the current directory) within, or containing, one
+     * of the packages of the package filter.
+     */
+    private File[] accept(final File[] files) {
+        final int offset = relativeOffset(root);
+        final List<File> accepted = new ArrayList<File>(files.length);
+        for (final File file : files) {
+            String name = file.getPath().substring(offset).replace(File.separatorChar, '/');
+            final boolean isDirectory = file.isDirectory();
+            if (isDirectory) {
+                name = name.concat("/");
+            }
+            for (final String pkgName : pkgNameFilter) {
+                if (name.startsWith(pkgName) || isDirectory && pkgName.startsWith(name)) {
+                    accepted.add(file);
+                    break;
+                }
+            }
+        }
+        return accepted.toArray(new File[0]);
+    }
+
+    /**
+     * Return the offset of the path relative to the specified root directory in the paths
+     * of the files within that directory. Only the path of a file system root (like "/" or
+     * "C:\") ends with a separator.
+     */
+    static int relativeOffset(final File root) {
+        final String rootPath = root.getPath();
+        return rootPath.endsWith(File.separator) ? rootPath.length() : rootPath.length() + 1;
+    }
+
     /**
      * Add the specified files in reverse order.
      */
@@ -0,0 +1,176 @@
+/* HitBatch.java
+ *
+ * Created: 2026-10-19 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.lang.annotation.ElementType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code HitBatch} is a chunk of detected annotations, delivered to a
+ * {@link AnnotationDetector.BatchReporter}.
+ * <p>
+ * The hits are stored column wise, in parallel {@code int} arrays. All names (annotation
+ * type names, class names and member names) are stored as an id into a symbol table.
+ * The ids are stable for the life time of the {@code AnnotationDetector}, so consumers
+ * can use them directly as keys of their own indexes. Usage:
+ * <pre>
+ * public void reportBatch(final HitBatch batch) {
+ *     final int[] annotations = batch.annotationIds();
+ *     final int[] classes = batch.classIds();
+ *     for (int i = 0; i &lt; batch.size(); ++i) {
+ *         index(annotations[i], classes[i]);
+ *     }
+ * }
+ * </pre>
+ * The same instance (and the same arrays) are reused for all batches, so a batch is only
+ * valid during the call to {@code reportBatch}. Instances of this class are not thread
+ * safe.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+public final class HitBatch {
+
+    /**
+     * The member id of a type level annotation.
+     */
+    public static final int NO_MEMBER = -1;
+
+    private static final ElementType[] TARGETS = {
+        ElementType.TYPE, ElementType.FIELD, ElementType.METHOD
+    };
+
+    private final int[] targets;
+    private final int[] annotationIds;
+    private final int[] classIds;
+    private final int[] memberIds;
+    private int size;
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    private final List<String> symbols = new ArrayList<String>();
+
+    HitBatch(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("batchSize < 1: " + capacity);
+        }
+        targets = new int[capacity];
+        annotationIds = new int[capacity];
+        classIds = new int[capacity];
+        memberIds = new int[capacity];
+    }
+
+    /**
+     * Return the number of hits in this batch. Only the first {@code size()} elements of
+     * the id arrays are valid.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the kind of declaration of the hit at the specified index: {@code TYPE},
+     * {@code FIELD} or {@code METHOD}.
+     */
+    public ElementType target(final int index) {
+        checkIndex(index);
+        return TARGETS[targets[index]];
+    }
+
+    /**
+     * Return the symbol ids of the fully qualified annotation type names.
+     */
+    public int[] annotationIds() {
+        return annotationIds;
+    }
+
+    /**
+     * Return the symbol ids of the fully qualified names of the annotated types.
+     */
+    public int[] classIds() {
+        return classIds;
+    }
+
+    /**
+     * Return the symbol ids of the annotated field or method names, or {@link #NO_MEMBER}
+     * for type level annotations.
+     */
+    public int[] memberIds() {
+        return memberIds;
+    }
+
+    /**
+     * Return the name with the specified symbol id.
+     */
+    public String symbol(final int id) {
+        return symbols.get(id);
+    }
+
+    /**
+     * Return the number of symbols. Symbol ids are numbered from {@code 0}, in order of
+     * appearance.
+     */
+    public int symbolCount() {
+        return symbols.size();
+    }
+
+    // package private
+
+    boolean isFull() {
+        return size == annotationIds.length;
+    }
+
+    void add(final ElementType target, final String annotationName, final String className,
+        final String memberName) {
+
+        targets[size] = target == ElementType.TYPE ? 0 : target == ElementType.FIELD ? 1 : 2;
+        annotationIds[size] = id(annotationName);
+        classIds[size] = id(className);
+        memberIds[size] = memberName == null ? NO_MEMBER : id(memberName);
+        ++size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    // private
+
+    private int id(final String symbol) {
+        final Integer id = ids.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        final int next = symbols.size();
+        ids.put(symbol, next);
+        symbols.add(symbol);
+        return next;
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+
+}
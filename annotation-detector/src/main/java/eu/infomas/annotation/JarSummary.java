@@ -0,0 +1,141 @@
+/* JarSummary.java
+ *
+ * Created: 2026-10-18 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * {@code JarSummary} is a Bloom filter over all annotation types used in a jar file.
+ * <p>
+ * If the summary of a jar file does not contain any of the requested annotations, the
+ * jar file does not have to be scanned at all. Note that a Bloom filter may report false
+ * positives (about 1% for this implementation), but never false negatives.
+ * Instances are immutable.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+final class JarSummary {
+
+    // about 10 bits per element and 7 hash functions gives a false positive rate of 1%
+    private static final int BITS_PER_ELEMENT = 10;
+    private static final int HASH_COUNT = 7;
+    // the maximum size of a persisted summary (8 MB, millions of annotation types)
+    private static final int MAX_WORDS = 1024 * 1024;
+
+    // the identity of the jar file, see ScanCache#key(File)
+    final String key;
+    private final long[] bits;
+
+    private JarSummary(final String key, final long[] bits) {
+        this.key = key;
+        this.bits = bits;
+    }
+
+    /**
+     * Create a new {@code JarSummary} containing the specified "raw" annotation type names,
+     * for example {@code "Ljava/lang/Deprecated;"}.
+     */
+    static JarSummary of(final String key, final Collection<String> annotations) {
+        final int words = Math.max(1, (annotations.size() * BITS_PER_ELEMENT + 63) / 64);
+        final JarSummary summary = new JarSummary(key, new long[words]);
+        for (final String annotation : annotations) {
+            summary.add(annotation);
+        }
+        return summary;
+    }
+
+    /**
+     * Return {@code true} if the jar file may contain (at least) one of the specified "raw"
+     * annotation type names.
+     */
+    boolean mightContainAny(final Collection<String> annotations) {
+        for (final String annotation : annotations) {
+            if (mightContain(annotation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void writeTo(final DataOutput out) throws IOException {
+        out.writeUTF(key);
+        out.writeInt(bits.length);
+        for (final long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    static JarSummary readFrom(final DataInput in) throws IOException {
+        final String key = in.readUTF();
+        final int words = in.readInt();
+        if (words <= 0 || words > MAX_WORDS) {
+            // truncated or corrupted, the summary is computed again
+            throw new IOException("Invalid JarSummary size: " + words);
+        }
+        final long[] bits = new long[words];
+        for (int i = 0; i < bits.length; ++i) {
+            bits[i] = in.readLong();
+        }
+        return new JarSummary(key, bits);
+    }
+
+    // private
+
+    private void add(final String annotation) {
+        final long size = bits.length * 64L;
+        final int h1 = annotation.hashCode();
+        final int h2 = mix(h1);
+        for (int i = 0; i < HASH_COUNT; ++i) {
+            final long bit = ((h1 + (long)i * h2) & Long.MAX_VALUE) % size;
+            bits[(int)(bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(final String annotation) {
+        final long size = bits.length * 64L;
+        final int h1 = annotation.hashCode();
+        final int h2 = mix(h1);
+        for (int i = 0; i < HASH_COUNT; ++i) {
+            final long bit = ((h1 + (long)i * h2) & Long.MAX_VALUE) % size;
+            if ((bits[(int)(bit >>> 6)] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // finalization step of MurmurHash3, used as second, independent hash function
+    private static int mix(final int hash) {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+
+}
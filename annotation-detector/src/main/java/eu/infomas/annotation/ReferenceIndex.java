@@ -0,0 +1,330 @@
+/* ReferenceIndex.java
+ *
+ * Created: 2026-10-19 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * {@code ReferenceIndex} holds the class and member references of all scanned classes, as
+ * found in the constant pool of their ClassFiles. Use a {@link Collector} to create a
+ * {@code ReferenceIndex}, in the same pass as the annotation scan:
+ * <pre>
+ * final ReferenceIndex.Collector references = new ReferenceIndex.Collector();
+ * new AnnotationDetector(reporter).collectReferences(references).detect();
+ * final ReferenceIndex index = references.build();
+ * for (final String user : index.getReferencingClasses("com.acme.legacy.*")) {
+ *     ...
+ * }
+ * </pre>
+ * A class reference is every class in the constant pool (for example super types,
+ * instantiated classes, casts and the owners of used fields and methods), a member
+ * reference is every field or method used (for example {@code "com.acme.Foo#bar"}).
+ * Types only used in descriptors (for example parameter types of methods which are never
+ * called) and references of a class to itself are not recorded. For array types the
+ * element type is recorded.
+ * <p>
+ * All names are stored only once, every reference is stored as two {@code int} values.
+ * Instances are immutable and can be shared by all threads without copying or locking.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+public final class ReferenceIndex {
+
+    /**
+     * {@code Collector} collects the references of the classes scanned by an
+     * {@link AnnotationDetector}, see {@link AnnotationDetector#collectReferences(Collector)}.
+     * Instances are not thread safe.
+     */
+    public static final class Collector {
+
+        private final Map<String, Integer> ids = new HashMap<String, Integer>();
+        private final List<String> symbols = new ArrayList<String>();
+        private int[] classes = new int[256];
+        private int classCount;
+        // per reference: the referencing class id (high) and referenced symbol id (low)
+        private long[] classReferences = new long[1024];
+        private int classReferenceCount;
+        private long[] memberReferences = new long[1024];
+        private int memberReferenceCount;
+
+        /**
+         * Return an immutable {@code ReferenceIndex} holding all references collected so
+         * far.
+         */
+        public ReferenceIndex build() {
+            return new ReferenceIndex(symbols.toArray(new String[0]),
+                new HashMap<String, Integer>(ids), Arrays.copyOf(classes, classCount),
+                Arrays.copyOf(classReferences, classReferenceCount),
+                Arrays.copyOf(memberReferences, memberReferenceCount));
+        }
+
+        // package private
+
+        /**
+         * Add a scanned class and return its id.
+         */
+        int addClass(final String className) {
+            if (classCount == classes.length) {
+                classes = Arrays.copyOf(classes, classCount * 2);
+            }
+            final int id = id(className);
+            classes[classCount++] = id;
+            return id;
+        }
+
+        void addClassReference(final int from, final String className) {
+            if (classReferenceCount == classReferences.length) {
+                classReferences = Arrays.copyOf(classReferences, classReferenceCount * 2);
+            }
+            classReferences[classReferenceCount++] = pair(from, id(className));
+        }
+
+        void addMemberReference(final int from, final String className,
+            final String memberName) {
+
+            if (memberReferenceCount == memberReferences.length) {
+                memberReferences = Arrays.copyOf(memberReferences, memberReferenceCount * 2);
+            }
+            memberReferences[memberReferenceCount++] =
+                pair(from, id(memberKey(className, memberName)));
+        }
+
+        // private
+
+        private int id(final String symbol) {
+            final Integer id = ids.get(symbol);
+            if (id != null) {
+                return id;
+            }
+            final int next = symbols.size();
+            ids.put(symbol, next);
+            symbols.add(symbol);
+            return next;
+        }
+
+    }
+
+    private final String[] symbols;
+    private final Map<String, Integer> ids;
+    // the ids of the scanned classes, in scan order
+    private final int[] classes;
+    private final Graph classesBySource;
+    private final Graph classesByTarget;
+    private final Graph membersBySource;
+    private final Graph membersByTarget;
+    // the names of all referenced classes, sorted, used for package queries
+    private final String[] referencedClasses;
+
+    private ReferenceIndex(final String[] symbols, final Map<String, Integer> ids,
+        final int[] classes, final long[] classReferences, final long[] memberReferences) {
+
+        this.symbols = symbols;
+        this.ids = ids;
+        this.classes = classes;
+        classesBySource = new Graph(symbols.length, classReferences, false);
+        classesByTarget = new Graph(symbols.length, classReferences, true);
+        membersBySource = new Graph(symbols.length, memberReferences, false);
+        membersByTarget = new Graph(symbols.length, memberReferences, true);
+        final List<String> names = new ArrayList<String>();
+        for (int id = 0; id < symbols.length; ++id) {
+            if (classesByTarget.count(id) > 0) {
+                names.add(symbols[id]);
+            }
+        }
+        referencedClasses = names.toArray(new String[names.size()]);
+        Arrays.sort(referencedClasses);
+    }
+
+    /**
+     * Return the fully qualified names of all scanned classes.
+     */
+    public List<String> getClassNames() {
+        return new Names(classes, 0, classes.length);
+    }
+
+    /**
+     * Return the fully qualified names of the classes referenced by the specified class.
+     */
+    public List<String> getReferencedClasses(final String className) {
+        return classesBySource.names(id(className));
+    }
+
+    /**
+     * Return the fields and methods used by the specified class, as
+     * {@code "<fully qualified class name>#<member name>"}.
+     */
+    public List<String> getReferencedMembers(final String className) {
+        return membersBySource.names(id(className));
+    }
+
+    /**
+     * Return the fully qualified names of the classes referencing the specified classes.
+     *
+     * @param selector a fully qualified class name, a package name followed by
+     * {@code ".*"} (for example {@code "com.acme.legacy.*"}, also matching sub packages)
+     * or {@code "*"}, matching all classes
+     */
+    public List<String> getReferencingClasses(final String selector) {
+        if (!selector.endsWith("*")) {
+            return classesByTarget.names(id(selector));
+        }
+        final String prefix = selector.substring(0, selector.length() - 1);
+        final boolean[] seen = new boolean[symbols.length];
+        final List<String> result = new ArrayList<String>();
+        int i = Arrays.binarySearch(referencedClasses, prefix);
+        for (i = i < 0 ? -i - 1 : i; i < referencedClasses.length &&
+            referencedClasses[i].startsWith(prefix); ++i) {
+
+            final int target = ids.get(referencedClasses[i]);
+            for (int j = classesByTarget.offsets[target];
+                j < classesByTarget.offsets[target + 1]; ++j) {
+
+                final int source = classesByTarget.values[j];
+                if (!seen[source]) {
+                    seen[source] = true;
+                    result.add(symbols[source]);
+                }
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Return the fully qualified names of the classes using the specified field or method
+     * (any overload of a method).
+     */
+    public List<String> getReferencingClasses(final String className,
+        final String memberName) {
+
+        return membersByTarget.names(id(memberKey(className, memberName)));
+    }
+
+    @Override
+    public String toString() {
+        return "ReferenceIndex[" + classes.length + " classes, " +
+            classesBySource.values.length + " class references, " +
+            membersBySource.values.length + " member references]";
+    }
+
+    // private
+
+    private static long pair(final int from, final int to) {
+        return ((long)from << 32) | to;
+    }
+
+    private static String memberKey(final String className, final String memberName) {
+        return className + '#' + memberName;
+    }
+
+    private int id(final String symbol) {
+        final Integer id = ids.get(symbol);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * An adjacency list: the distinct values (symbol ids) per key (symbol id), stored in a
+     * single array.
+     */
+    private final class Graph {
+
+        final int[] offsets;
+        final int[] values;
+
+        /**
+         * Create the graph of the specified (from, to) pairs, keyed by "from", or by "to"
+         * if reversed.
+         */
+        Graph(final int keyCount, final long[] pairs, final boolean reversed) {
+            final long[] edges = new long[pairs.length];
+            for (int i = 0; i < pairs.length; ++i) {
+                edges[i] = reversed ? pair((int)pairs[i], (int)(pairs[i] >>> 32)) : pairs[i];
+            }
+            Arrays.sort(edges);
+            offsets = new int[keyCount + 1];
+            int n = 0;
+            for (int i = 0; i < edges.length; ++i) {
+                if (i == 0 || edges[i] != edges[i - 1]) {
+                    edges[n++] = edges[i];
+                    ++offsets[(int)(edges[i] >>> 32) + 1];
+                }
+            }
+            for (int k = 0; k < keyCount; ++k) {
+                offsets[k + 1] += offsets[k];
+            }
+            values = new int[n];
+            for (int i = 0; i < n; ++i) {
+                values[i] = (int)edges[i];
+            }
+        }
+
+        int count(final int key) {
+            return offsets[key + 1] - offsets[key];
+        }
+
+        List<String> names(final int key) {
+            if (key < 0) {
+                return Collections.emptyList();
+            }
+            return new Names(values, offsets[key], offsets[key + 1]);
+        }
+
+    }
+
+    /**
+     * A read-only view of a range of symbol ids.
+     */
+    private final class Names extends AbstractList<String> implements RandomAccess {
+
+        private final int[] symbolIds;
+        private final int from;
+        private final int to;
+
+        Names(final int[] symbolIds, final int from, final int to) {
+            this.symbolIds = symbolIds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String get(final int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("index: " + index);
+            }
+            return symbols[symbolIds[from + index]];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+    }
+
+}
@@ -0,0 +1,116 @@
+/* ResourceFilter.java
+ *
+ * Created: 2026-10-19 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@code ResourceFilter} selects the (non ClassFile) resources encountered while
+ * iterating over ClassFiles and passes them to a
+ * {@link AnnotationDetector.ResourceReporter}, see {@link ClassFileIterator}.
+ * <p>
+ * Resource names use '/' as separator. In a pattern, {@code '*'} matches any sequence of
+ * characters within a single name segment (not containing '/'). A pattern without '/' is
+ * matched against the last segment of the name (the file name), so {@code "*.properties"}
+ * matches all properties files, wherever located.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+final class ResourceFilter {
+
+    private final String[] patterns;
+    private final AnnotationDetector.ResourceReporter reporter;
+
+    ResourceFilter(final AnnotationDetector.ResourceReporter reporter) {
+        this.patterns = reporter.resourceNames().clone();
+        this.reporter = reporter;
+    }
+
+    /**
+     * Return {@code true} if the resource with the specified name must be reported.
+     * Java ClassFiles are never reported as resource.
+     */
+    boolean accept(final String name) {
+        if (name.endsWith(".class")) {
+            return false;
+        }
+        final int slash = name.lastIndexOf('/');
+        for (final String pattern : patterns) {
+            if (pattern.indexOf('/') < 0 ?
+                matches(pattern, name, slash + 1) :
+                matches(pattern, name, 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Report the specified resource. The stream is always closed.
+     */
+    void report(final String name, final InputStream stream) throws IOException {
+        try {
+            reporter.reportResource(name, stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    // private
+
+    /**
+     * Match the specified pattern against the name, starting at the specified offset.
+     * A failed {@code '*'} match is retried with one more character (greedy backtracking),
+     * so at most {@code O(pattern.length() * name.length())} steps are needed.
+     */
+    private static boolean matches(final String pattern, final String name,
+        final int offset) {
+
+        int p = 0;
+        int n = offset;
+        // the position of the last '*' in the pattern and the name position it matched
+        int star = -1;
+        int mark = 0;
+        while (n < name.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = n;
+            } else if (p < pattern.length() && pattern.charAt(p) == name.charAt(n)) {
+                ++p;
+                ++n;
+            } else if (star >= 0 && name.charAt(mark) != '/') {
+                // let the last '*' match one more character
+                p = star + 1;
+                n = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            ++p;
+        }
+        return p == pattern.length();
+    }
+
+}
@@ -0,0 +1,522 @@
+/* ScanCache.java
+ *
+ * Created: 2026-10-18 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@code ScanCache} is an in-memory cache of the annotations found in the Java ClassFile
+ * entries of jar files, shared by all {@link AnnotationDetector} instances using it.
+ * <p>
+ * Cache entries are keyed by the identity of the jar file (path, size and last modified
+ * time) and the name and CRC of the jar file entry. A cached entry holds <em>all</em>
+ * annotations of a ClassFile, so it can be used by any {@code AnnotationDetector},
+ * independent of the annotations it has to report. A cache hit avoids inflating and
+ * parsing the ClassFile.
+ * <p>
+ * Only one {@code AnnotationDetector} at a time scans a specific jar file. Other detectors
+ * wait until this scan is finished and are then served from the cache. The size of the
+ * cache is bounded by the (approximate) weight in bytes of the cached data. If this size
+ * is exceeded, the least recently used jar files are evicted.
+ * <p>
+ * For every jar file which is scanned completely (i.e. without package filter), a
+ * {@link JarSummary} (Bloom filter) over all annotation types used in the jar file is
+ * computed. Jar files which certainly do not contain any of the requested annotations are
+ * skipped without being opened. Summaries are small and are not evicted. Optionally they
+ * are persisted in a directory, so they are also available for new JVM instances.
+ * <p>
+ * Optionally, jar files are identified by their content instead of their path: the size
+ * of the jar file and a CRC of its central directory, which holds the name, size and CRC
+ * of every entry. Identical copies of a jar file, for example in the {@code WEB-INF/lib}
+ * directory of several web applications, then share their cached entries and summary and
+ * are scanned only once. Only the end of the jar file is read to compute the fingerprint
+ * and the fingerprint is only computed again if the jar file is modified.
+ * <p>
+ * The annotations of OSGi bundles, scanned by a {@link BundleResourceIterator}, are cached
+ * per bundle revision.
+ * <p>
+ * The cache is opt-in, see {@link AnnotationDetector#scanCache(ScanCache)}. Instances of
+ * this class are thread safe.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+public final class ScanCache {
+
+    /**
+     * The cached entries of a single jar file. A {@code JarRecord} must be locked while
+     * its jar file is scanned, see {@link ScanCache#acquire(File)}.
+     */
+    static final class JarRecord {
+
+        // the path of the jar file, or the key if jar files are identified by content
+        final String id;
+        final String key;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, ClassSummary> entries = new HashMap<String, ClassSummary>();
+        private final Map<String, Long> crcs = new HashMap<String, Long>();
+        private long weight;
+        // the part of weight accounted for in the weight of the ScanCache
+        private long accounted;
+
+        private JarRecord(final String id, final String key) {
+            this.id = id;
+            this.key = key;
+        }
+
+        /**
+         * Return the cached summary of the specified entry with the specified CRC
+         * ({@code -1} if unknown) or {@code null} if the entry is not (yet) cached.
+         */
+        ClassSummary get(final String name, final long crc) {
+            final Long cached = crcs.get(name);
+            if (cached == null || cached.longValue() != crc) {
+                return null;
+            }
+            return entries.get(name);
+        }
+
+        void put(final String name, final long crc, final ClassSummary summary) {
+            final ClassSummary previous = entries.put(name, summary);
+            crcs.put(name, crc);
+            weight += summary.weight() + name.length() * 2 + 48;
+            if (previous != null) {
+                weight -= previous.weight() + name.length() * 2 + 48;
+            }
+        }
+
+    }
+
+    // default size of the shared cache, 64 MB
+    private static final long SHARED_MAXIMUM_WEIGHT = 64L * 1024 * 1024;
+    // signature and minimum size of the "end of central directory record"
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int MAXIMUM_COMMENT_SIZE = 0xFFFF;
+    private static ScanCache shared;
+
+    private final long maximumWeight;
+    private final File summaryDirectory;
+    private final boolean identifyByContent;
+    // the content key per path of a jar file, removed if its JarRecord is evicted
+    private final Map<String, Fingerprint> fingerprints = new HashMap<String, Fingerprint>();
+    private final Map<String, JarSummary> summaries = new HashMap<String, JarSummary>();
+    // access order, so the first record is the least recently used
+    private final LinkedHashMap<String, JarRecord> records =
+        new LinkedHashMap<String, JarRecord>(64, 0.75f, true);
+    private long weight;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Create a new {@code ScanCache} instance.
+     *
+     * @param maximumWeight the maximum (approximate) size of the cached data in bytes
+     */
+    public ScanCache(final long maximumWeight) {
+        this(maximumWeight, null);
+    }
+
+    /**
+     * Create a new {@code ScanCache} instance, persisting the {@link JarSummary jar file
+     * summaries} in the specified directory.
+     *
+     * @param maximumWeight the maximum (approximate) size of the cached data in bytes
+     * @param summaryDirectory the (existing) directory used to store the jar file
+     * summaries or {@code null} if summaries are only kept in memory
+     */
+    public ScanCache(final long maximumWeight, final File summaryDirectory) {
+        this(maximumWeight, summaryDirectory, false);
+    }
+
+    /**
+     * Create a new {@code ScanCache} instance, optionally identifying jar files by their
+     * content, so identical jar files at different locations are scanned only once.
+     *
+     * @param maximumWeight the maximum (approximate) size of the cached data in bytes
+     * @param summaryDirectory the (existing) directory used to store the jar file
+     * summaries or {@code null} if summaries are only kept in memory
+     * @param identifyByContent {@code true} to identify jar files by their size and the
+     * SHA-256 digest of their central directory, {@code false} to identify jar files by
+     * their path, size and last modified time
+     */
+    public ScanCache(final long maximumWeight, final File summaryDirectory,
+        final boolean identifyByContent) {
+
+        if (maximumWeight < 1) {
+            throw new IllegalArgumentException("maximumWeight < 1: " + maximumWeight);
+        }
+        if (summaryDirectory != null && !summaryDirectory.isDirectory()) {
+            throw new IllegalArgumentException("Not a directory: " + summaryDirectory);
+        }
+        this.maximumWeight = maximumWeight;
+        this.summaryDirectory = summaryDirectory;
+        this.identifyByContent = identifyByContent;
+    }
+
+    /**
+     * Return the JVM wide shared {@code ScanCache} instance, with a maximum size of 64 MB.
+     */
+    public static synchronized ScanCache getShared() {
+        if (shared == null) {
+            shared = new ScanCache(SHARED_MAXIMUM_WEIGHT);
+        }
+        return shared;
+    }
+
+    /**
+     * Return the number of ClassFile entries served from this cache.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Return the number of ClassFile entries which had to be parsed, because they were
+     * not available from this cache.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Return the (approximate) size of all cached data in bytes.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Remove all entries from this cache.
+     */
+    public synchronized void clear() {
+        records.clear();
+        summaries.clear();
+        synchronized (fingerprints) {
+            fingerprints.clear();
+        }
+        weight = 0;
+    }
+
+    // package private
+
+    /**
+     * Return the locked {@code JarRecord} of the specified jar file. The calling thread
+     * must {@link #release(JarRecord)} the record when done. If another thread is
+     * scanning the same jar file, this method blocks until that scan is finished.
+     */
+    JarRecord acquire(final File jarFile) {
+        // computed before locking, may read the end of the jar file
+        final String key = key(jarFile);
+        return acquire(id(jarFile, key), key);
+    }
+
+    /**
+     * Return the locked {@code JarRecord} with the specified id, for other containers of
+     * ClassFiles than jar files (for example OSGi bundle revisions). The cached entries
+     * are discarded if the key changes.
+     */
+    JarRecord acquire(final String id, final String key) {
+        final JarRecord record;
+        synchronized (this) {
+            final JarRecord cached = records.get(id);
+            if (cached == null || !cached.key.equals(key)) {
+                // new or modified jar file
+                if (cached != null) {
+                    weight -= cached.accounted;
+                }
+                record = new JarRecord(id, key);
+                records.put(id, record);
+            } else {
+                record = cached;
+            }
+        }
+        record.lock.lock();
+        return record;
+    }
+
+    /**
+     * Return {@code true} if entries of the {@code JarRecord} with the specified id and
+     * key are cached, so there is no need to read its entries in advance.
+     */
+    synchronized boolean contains(final String id, final String key) {
+        final JarRecord cached = records.get(id);
+        return cached != null && cached.key.equals(key) && cached.accounted > 0;
+    }
+
+    /**
+     * Release (unlock) the specified {@code JarRecord}, evicting the least recently used
+     * jar files if the maximum size of this cache is exceeded.
+     */
+    void release(final JarRecord record) {
+        try {
+            synchronized (this) {
+                if (records.get(record.id) == record) {
+                    weight += record.weight - record.accounted;
+                    record.accounted = record.weight;
+                }
+                evict();
+            }
+        } finally {
+            record.lock.unlock();
+        }
+    }
+
+    /**
+     * Return the {@link JarSummary} of the specified jar file, or {@code null} if the jar
+     * file is not (yet) scanned completely or is modified since.
+     */
+    JarSummary getSummary(final File jarFile) {
+        final String key = key(jarFile);
+        final String id = id(jarFile, key);
+        synchronized (this) {
+            JarSummary summary = summaries.get(id);
+            if (summary == null && summaryDirectory != null) {
+                summary = readSummary(summaryFile(jarFile, id));
+                if (summary != null) {
+                    summaries.put(id, summary);
+                }
+            }
+            return summary != null && summary.key.equals(key) ? summary : null;
+        }
+    }
+
+    synchronized void putSummary(final File jarFile, final JarSummary summary) {
+        final String id = id(jarFile, summary.key);
+        summaries.put(id, summary);
+        if (summaryDirectory != null) {
+            writeSummary(summaryFile(jarFile, id), summary);
+        }
+    }
+
+    /**
+     * Return the identity of the specified jar file, changes if the jar file is modified.
+     */
+    String key(final File jarFile) {
+        final String path = jarFile.getPath();
+        final String stamp = jarFile.length() + "|" + jarFile.lastModified();
+        if (!identifyByContent) {
+            return path + '|' + stamp;
+        }
+        synchronized (fingerprints) {
+            final Fingerprint fingerprint = fingerprints.get(path);
+            if (fingerprint != null && fingerprint.stamp.equals(stamp)) {
+                return fingerprint.value;
+            }
+        }
+        final String fingerprint = fingerprint(jarFile);
+        if (fingerprint == null) {
+            // not a (supported) ZIP file, identified by path
+            return path + '|' + stamp;
+        }
+        synchronized (fingerprints) {
+            // replaces the fingerprint of a modified jar file
+            fingerprints.put(path, new Fingerprint(stamp, fingerprint));
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Return the number of jar files of which the fingerprint is kept.
+     */
+    int getFingerprintCount() {
+        synchronized (fingerprints) {
+            return fingerprints.size();
+        }
+    }
+
+    void hit() {
+        hitCount.incrementAndGet();
+    }
+
+    void miss() {
+        missCount.incrementAndGet();
+    }
+
+    // private
+
+    private static final class Fingerprint {
+
+        final String stamp;
+        final String value;
+
+        Fingerprint(final String stamp, final String value) {
+            this.stamp = stamp;
+            this.value = value;
+        }
+
+    }
+
+    private String id(final File jarFile, final String key) {
+        return identifyByContent ? key : jarFile.getPath();
+    }
+
+    private File summaryFile(final File jarFile, final String id) {
+        return new File(summaryDirectory, jarFile.getName() + '-' +
+            Integer.toHexString(id.hashCode()) + ".summary");
+    }
+
+    /**
+     * Return the size of the specified ZIP file and the size and SHA-256 digest of its
+     * central directory, or {@code null} if the central directory can not be located (for
+     * example a ZIP64 file).
+     */
+    private static String fingerprint(final File zipFile) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(zipFile, "r");
+            final long length = file.length();
+            if (length < END_SIZE) {
+                return null;
+            }
+            // the end record is followed by an (optional) comment of at most 64 KB
+            final int tail = (int)Math.min(length, END_SIZE + MAXIMUM_COMMENT_SIZE);
+            final byte[] bytes = new byte[tail];
+            file.seek(length - tail);
+            file.readFully(bytes);
+            for (int i = tail - END_SIZE; i >= 0; --i) {
+                if (int32(bytes, i) == END_SIGNATURE) {
+                    final long size = int32(bytes, i + 12) & 0xFFFFFFFFL;
+                    final long offset = int32(bytes, i + 16) & 0xFFFFFFFFL;
+                    if (offset + size > length - tail + i) {
+                        // ZIP64 or not a valid end record
+                        return null;
+                    }
+                    final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                    final byte[] buffer = new byte[8 * 1024];
+                    file.seek(offset);
+                    for (long remaining = size; remaining > 0; ) {
+                        final int n = (int)Math.min(remaining, buffer.length);
+                        file.readFully(buffer, 0, n);
+                        digest.update(buffer, 0, n);
+                        remaining -= n;
+                    }
+                    return length + "|" + size + '|' + hex(digest.digest());
+                }
+            }
+            return null;
+        } catch (IOException ex) {
+            // silently ignore, jar file is identified by path
+            return null;
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException("SHA-256 not supported", ex);
+        } finally {
+            close(file);
+        }
+    }
+
+    private static String hex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(2 * bytes.length);
+        for (final byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16))
+                .append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    // little endian
+    private static int int32(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 |
+            (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    private static JarSummary readSummary(final File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            return JarSummary.readFrom(in);
+        } catch (IOException ex) {
+            // silently ignore, summary is computed again
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    private static void writeSummary(final File file, final JarSummary summary) {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            summary.writeTo(out);
+        } catch (IOException ex) {
+            // silently ignore, summary is only kept in memory
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void close(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    private void evict() {
+        final Iterator<JarRecord> iter = records.values().iterator();
+        while (weight > maximumWeight && iter.hasNext()) {
+            final JarRecord eldest = iter.next();
+            iter.remove();
+            weight -= eldest.accounted;
+            if (identifyByContent) {
+                forget(eldest.id);
+            }
+        }
+    }
+
+    // remove the fingerprints of an evicted JarRecord, so they do not accumulate
+    private void forget(final String id) {
+        synchronized (fingerprints) {
+            final Iterator<Fingerprint> iter = fingerprints.values().iterator();
+            while (iter.hasNext()) {
+                if (iter.next().value.equals(id)) {
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,428 @@
+/* ScanResult.java
+ *
+ * Created: 2026-10-19 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.lang.annotation.ElementType;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * {@code ScanResult} holds all annotations detected by a scan, indexed by annotation type,
+ * by class and by package. Use a {@link Collector} to create a {@code ScanResult}:
+ * <pre>
+ * final ScanResult.Collector collector = new ScanResult.Collector("javax.persistence.*");
+ * new AnnotationDetector(collector).detect("com.example");
+ * final ScanResult result = collector.build();
+ * for (final String entity : result.getTypesAnnotatedWith("javax.persistence.Entity")) {
+ *     ...
+ * }
+ * </pre>
+ * All names are stored only once, every hit is stored as four {@code int} values. The
+ * indexes are computed when the result is built, so every query takes O(1) time plus
+ * O(k) time for the k returned hits. The returned lists are read-only views,
+ * {@link AnnotationHit} instances are created when accessed.
+ * <p>
+ * Instances are immutable and can be shared by all threads without copying or locking.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+public final class ScanResult {
+
+    /**
+     * {@code Collector} is a {@link AnnotationDetector.NameReporter} collecting the
+     * detected annotations, see {@link #build()}. Instances are not thread safe.
+     */
+    public static final class Collector implements AnnotationDetector.NameReporter {
+
+        private final String[] annotationNames;
+        private final Map<String, Integer> ids = new HashMap<String, Integer>();
+        private final List<String> symbols = new ArrayList<String>();
+        // per hit: target ordinal, annotation, class and member (-1 for types) id
+        private int[] hits = new int[4 * 256];
+        private int size;
+
+        /**
+         * Create a new {@code Collector}.
+         *
+         * @param annotationNames the selectors of the annotation types to collect, see
+         * {@link AnnotationDetector.NameReporter#annotationNames()}
+         */
+        public Collector(final String... annotationNames) {
+            this.annotationNames = annotationNames.clone();
+        }
+
+        @Override
+        public String[] annotationNames() {
+            return annotationNames.clone();
+        }
+
+        @Override
+        public void reportAnnotation(final ElementType target, final String annotationName,
+            final String className, final String memberName) {
+
+            if (4 * size == hits.length) {
+                hits = Arrays.copyOf(hits, hits.length * 2);
+            }
+            final int offset = 4 * size++;
+            hits[offset] = target == ElementType.TYPE ? TYPE :
+                target == ElementType.FIELD ? FIELD : METHOD;
+            hits[offset + 1] = id(annotationName);
+            hits[offset + 2] = id(className);
+            hits[offset + 3] = memberName == null ? -1 : id(memberName);
+        }
+
+        /**
+         * Return an immutable {@code ScanResult} holding all annotations collected so far.
+         */
+        public ScanResult build() {
+            return new ScanResult(Arrays.copyOf(hits, 4 * size),
+                symbols.toArray(new String[0]), new HashMap<String, Integer>(ids));
+        }
+
+        private int id(final String symbol) {
+            final Integer id = ids.get(symbol);
+            if (id != null) {
+                return id;
+            }
+            final int next = symbols.size();
+            ids.put(symbol, next);
+            symbols.add(symbol);
+            return next;
+        }
+
+    }
+
+    private static final int TYPE = 0;
+    private static final int FIELD = 1;
+    private static final int METHOD = 2;
+    private static final ElementType[] TARGETS = {
+        ElementType.TYPE, ElementType.FIELD, ElementType.METHOD
+    };
+
+    // per hit: target, annotation, class and member id
+    private final int[] hits;
+    // per hit: the package id, package names are added to the symbols
+    private final int[] packages;
+    private final String[] symbols;
+    private final Map<String, Integer> ids;
+    private final Index byAnnotation;
+    private final Index byClass;
+    private final Index byPackage;
+    // the distinct annotated classes per annotation type, type level annotations only
+    private final Index typesByAnnotation;
+    private final List<String> annotationNames;
+    private final List<String> classNames;
+
+    private ScanResult(final int[] hits, final String[] symbols,
+        final Map<String, Integer> ids) {
+
+        final int size = hits.length / 4;
+        final List<String> allSymbols = new ArrayList<String>(Arrays.asList(symbols));
+        final int[] classPackages = new int[symbols.length];
+        final List<String> annotations = new ArrayList<String>();
+        final List<String> classes = new ArrayList<String>();
+        final boolean[] seenAnnotation = new boolean[symbols.length];
+        final boolean[] seenClass = new boolean[symbols.length];
+        final int[] annotationKeys = new int[size];
+        final int[] classKeys = new int[size];
+        packages = new int[size];
+        int typeHits = 0;
+        for (int i = 0; i < size; ++i) {
+            final int annotation = hits[4 * i + 1];
+            final int type = hits[4 * i + 2];
+            if (!seenAnnotation[annotation]) {
+                seenAnnotation[annotation] = true;
+                annotations.add(symbols[annotation]);
+            }
+            if (!seenClass[type]) {
+                seenClass[type] = true;
+                classes.add(symbols[type]);
+                final String packageName =
+                    symbols[type].substring(0, Math.max(0, symbols[type].lastIndexOf('.')));
+                Integer id = ids.get(packageName);
+                if (id == null) {
+                    id = allSymbols.size();
+                    ids.put(packageName, id);
+                    allSymbols.add(packageName);
+                }
+                classPackages[type] = id;
+            }
+            annotationKeys[i] = annotation;
+            classKeys[i] = type;
+            packages[i] = classPackages[type];
+            if (hits[4 * i] == TYPE) {
+                ++typeHits;
+            }
+        }
+        final int[] typeAnnotations = new int[typeHits];
+        final int[] types = new int[typeHits];
+        int n = 0;
+        for (int i = 0; i < size; ++i) {
+            if (hits[4 * i] == TYPE) {
+                typeAnnotations[n] = hits[4 * i + 1];
+                types[n++] = hits[4 * i + 2];
+            }
+        }
+        this.hits = hits;
+        this.symbols = allSymbols.toArray(new String[0]);
+        this.ids = ids;
+        final int keyCount = this.symbols.length;
+        this.byAnnotation = new Index(keyCount, annotationKeys, null);
+        this.byClass = new Index(keyCount, classKeys, null);
+        this.byPackage = new Index(keyCount, packages, null);
+        this.typesByAnnotation = new Index(keyCount, typeAnnotations, types);
+        this.annotationNames = Collections.unmodifiableList(annotations);
+        this.classNames = Collections.unmodifiableList(classes);
+    }
+
+    /**
+     * Return the number of detected annotations.
+     */
+    public int size() {
+        return hits.length / 4;
+    }
+
+    /**
+     * Return the fully qualified names of all detected annotation types.
+     */
+    public List<String> getAnnotationNames() {
+        return annotationNames;
+    }
+
+    /**
+     * Return the fully qualified names of all annotated classes.
+     */
+    public List<String> getClassNames() {
+        return classNames;
+    }
+
+    /**
+     * Return all detected annotations.
+     */
+    public List<AnnotationHit> getHits() {
+        return new Hits(null, 0, size());
+    }
+
+    /**
+     * Return all detected annotations of the specified annotation type, on types, fields
+     * and methods.
+     */
+    public List<AnnotationHit> getHits(final String annotationName) {
+        return byAnnotation.hits(id(annotationName));
+    }
+
+    /**
+     * Return all detected annotations on the specified class and its fields and methods.
+     */
+    public List<AnnotationHit> getHitsOn(final String className) {
+        return byClass.hits(id(className));
+    }
+
+    /**
+     * Return all detected annotations on the classes (and their fields and methods) in
+     * the specified package, excluding sub packages. Use {@code ""} for the default
+     * package.
+     */
+    public List<AnnotationHit> getHitsInPackage(final String packageName) {
+        return byPackage.hits(id(packageName));
+    }
+
+    /**
+     * Return all detected annotations of the specified annotation type on the classes
+     * (and their fields and methods) in the specified package, excluding sub packages.
+     */
+    public List<AnnotationHit> getHitsInPackage(final String annotationName,
+        final String packageName) {
+
+        final int annotation = id(annotationName);
+        final int pkg = id(packageName);
+        if (annotation < 0 || pkg < 0) {
+            return Collections.emptyList();
+        }
+        // iterate over the shortest list
+        final boolean byType = byAnnotation.count(annotation) <= byPackage.count(pkg);
+        final Index index = byType ? byAnnotation : byPackage;
+        final int key = byType ? annotation : pkg;
+        final int[] selected = new int[index.count(key)];
+        int n = 0;
+        for (int i = index.offsets[key]; i < index.offsets[key + 1]; ++i) {
+            final int hit = index.values[i];
+            if (byType ? packages[hit] == pkg : hits[4 * hit + 1] == annotation) {
+                selected[n++] = hit;
+            }
+        }
+        return new Hits(selected, 0, n);
+    }
+
+    /**
+     * Return the fully qualified names of the classes annotated with the specified
+     * annotation type (type level annotations only).
+     */
+    public List<String> getTypesAnnotatedWith(final String annotationName) {
+        final int key = id(annotationName);
+        if (key < 0) {
+            return Collections.emptyList();
+        }
+        return new Names(typesByAnnotation.values, typesByAnnotation.offsets[key],
+            typesByAnnotation.offsets[key + 1]);
+    }
+
+    @Override
+    public String toString() {
+        return "ScanResult[" + size() + " annotations on " + classNames.size() +
+            " classes]";
+    }
+
+    // private
+
+    private int id(final String symbol) {
+        final Integer id = ids.get(symbol);
+        return id == null ? -1 : id;
+    }
+
+    private AnnotationHit hit(final int index) {
+        final int offset = 4 * index;
+        final int member = hits[offset + 3];
+        return new AnnotationHit(TARGETS[hits[offset]], symbols[hits[offset + 1]],
+            symbols[hits[offset + 2]], member < 0 ? null : symbols[member]);
+    }
+
+    /**
+     * An inverted index: the values per key (symbol id), stored in a single array.
+     */
+    private final class Index {
+
+        final int[] offsets;
+        final int[] values;
+
+        /**
+         * Index the specified values by the specified keys. If the values are
+         * {@code null}, the index in the keys array (the hit index) is used. Repeated
+         * values of the same key are stored once.
+         */
+        Index(final int keyCount, final int[] keys, final int[] valuesOrNull) {
+            offsets = new int[keyCount + 1];
+            final int[] last = new int[keyCount];
+            Arrays.fill(last, -1);
+            for (int i = 0; i < keys.length; ++i) {
+                final int value = valuesOrNull == null ? i : valuesOrNull[i];
+                if (last[keys[i]] != value) {
+                    last[keys[i]] = value;
+                    ++offsets[keys[i] + 1];
+                }
+            }
+            for (int k = 0; k < keyCount; ++k) {
+                offsets[k + 1] += offsets[k];
+            }
+            final int[] next = Arrays.copyOf(offsets, keyCount);
+            Arrays.fill(last, -1);
+            values = new int[offsets[keyCount]];
+            for (int i = 0; i < keys.length; ++i) {
+                final int value = valuesOrNull == null ? i : valuesOrNull[i];
+                if (last[keys[i]] != value) {
+                    last[keys[i]] = value;
+                    values[next[keys[i]]++] = value;
+                }
+            }
+        }
+
+        int count(final int key) {
+            return offsets[key + 1] - offsets[key];
+        }
+
+        List<AnnotationHit> hits(final int key) {
+            if (key < 0) {
+                return Collections.emptyList();
+            }
+            return new Hits(values, offsets[key], offsets[key + 1]);
+        }
+
+    }
+
+    /**
+     * A read-only view of a range of hit indexes ({@code null} for all hits).
+     */
+    private final class Hits extends AbstractList<AnnotationHit> implements RandomAccess {
+
+        private final int[] indexes;
+        private final int from;
+        private final int to;
+
+        Hits(final int[] indexes, final int from, final int to) {
+            this.indexes = indexes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public AnnotationHit get(final int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("index: " + index);
+            }
+            return hit(indexes == null ? from + index : indexes[from + index]);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+    }
+
+    /**
+     * A read-only view of a range of symbol ids.
+     */
+    private final class Names extends AbstractList<String> implements RandomAccess {
+
+        private final int[] symbolIds;
+        private final int from;
+        private final int to;
+
+        Names(final int[] symbolIds, final int from, final int to) {
+            this.symbolIds = symbolIds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String get(final int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("index: " + index);
+            }
+            return symbols[symbolIds[from + index]];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+    }
+
+}
@@ -0,0 +1,595 @@
+/* ScanServer.java
+ *
+ * Created: 2026-10-19 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.ElementType;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * {@code ScanServer} is a long-lived scan daemon, serving the annotations of a class path
+ * to {@link AnnotationDetector} instances running in other (short-lived) JVM's on the
+ * same machine, see {@link AnnotationDetector#scanServer(int)}.
+ * <p>
+ * The server uses a {@link ScanCache}, so the annotations of every jar file are parsed
+ * only once and kept in memory. A jar file is identified by its path, size and last
+ * modified time (or its content, see {@link ScanCache}), so modified jar files are
+ * detected on every request and scanned again. Directories are always scanned.
+ * <p>
+ * The server only listens on the loopback interface and writes its port and a random
+ * secret to a <em>server file</em>, only readable by its owner. Clients read this file
+ * (see {@link AnnotationDetector#scanServer(File)}) and both sides prove knowledge of the
+ * secret before a request is sent, so other local users can not query the server and a
+ * process squatting the port can not return forged results. Only class path roots below
+ * one of the configured root directories are scanned. Store the server file in a
+ * directory only writable by its owner (for example the home directory).
+ * <p>
+ * At most {@value #MAX_CONNECTIONS} requests are served concurrently, other connections
+ * are closed immediately (the client then scans locally).
+ * Start a server from the command line:
+ * <pre>
+ * java -cp annotation-detector.jar eu.infomas.annotation.ScanServer server-file root...
+ * </pre>
+ * Instances of this class are thread safe.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+public final class ScanServer implements Closeable {
+
+    /**
+     * The maximum number of requests served concurrently.
+     */
+    public static final int MAX_CONNECTIONS = 16;
+
+    // identifies the protocol (and its version), "ASL1"
+    private static final int MAGIC = 0x41534c31;
+    private static final int OK = 1;
+    private static final int ERROR = 0;
+    // the roles in the handshake, so a proof of one side is never valid for the other
+    private static final int SERVER = 'S';
+    private static final int CLIENT = 'C';
+    private static final int NONCE_SIZE = 16;
+    private static final int PROOF_SIZE = 32;
+    private static final int SECRET_BITS = 256;
+    // a client falls back to a local scan if the server is not available within this time
+    private static final int CONNECT_TIMEOUT = 1000;
+    // a client falls back to a local scan if the server does not respond within this time
+    private static final int READ_TIMEOUT = 60 * 1000;
+    // a connection is closed if the client does not send its request within this time
+    private static final int REQUEST_TIMEOUT = 10 * 1000;
+    // the maximum number of files and strings in a request
+    private static final int MAX_COUNT = 16 * 1024;
+    // default size of the ScanCache of a server started from the command line, 256 MB
+    private static final long MAXIMUM_WEIGHT = 256L * 1024 * 1024;
+
+    private final ServerSocket serverSocket;
+    private final ScanCache cache;
+    private final File serverFile;
+    private final byte[] secret;
+    // canonical paths, ending with a separator
+    private final String[] roots;
+    private final ExecutorService executor;
+    private final SecureRandom random = new SecureRandom();
+    private volatile boolean closed;
+
+    /**
+     * Create a new {@code ScanServer} listening on the specified loopback port.
+     *
+     * @param port the port, or {@code 0} to use any free port (see {@link #getPort()})
+     * @param cache the {@code ScanCache} used for all scans
+     * @param serverFile the file to which the port and secret are written, replaced if it
+     * exists and deleted when this server is closed
+     * @param roots the directories containing the class path roots which may be scanned
+     * @throws IOException if the server file can not be written with owner-only access
+     */
+    public ScanServer(final int port, final ScanCache cache, final File serverFile,
+        final File... roots) throws IOException {
+
+        if (cache == null) {
+            throw new IllegalArgumentException("cache must be specified");
+        }
+        if (roots.length == 0) {
+            throw new IllegalArgumentException("roots must be specified");
+        }
+        this.roots = new String[roots.length];
+        for (int i = 0; i < roots.length; ++i) {
+            final String path = roots[i].getCanonicalPath();
+            this.roots[i] = path.endsWith(File.separator) ? path : path + File.separator;
+        }
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+        this.cache = cache;
+        this.serverFile = serverFile;
+        final String value = new BigInteger(SECRET_BITS, random).toString(Character.MAX_RADIX);
+        this.secret = value.getBytes("US-ASCII");
+        try {
+            writeServerFile(serverFile, getPort(), value);
+        } catch (IOException ex) {
+            serverSocket.close();
+            throw ex;
+        }
+        final ThreadFactory threadFactory = new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable,
+                    "annotation-detector-server-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        };
+        // one additional thread for serve(), if started in the background
+        this.executor = new ThreadPoolExecutor(0, MAX_CONNECTIONS + 1, 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), threadFactory);
+    }
+
+    /**
+     * Start a {@code ScanServer} on any free port and serve requests until the JVM is
+     * stopped. The first argument is the server file, the other arguments are the root
+     * directories.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException(
+                "Usage: ScanServer <server file> <root directory>...");
+        }
+        final File[] roots = new File[args.length - 1];
+        for (int i = 0; i < roots.length; ++i) {
+            roots[i] = new File(args[i + 1]);
+        }
+        new ScanServer(0, new ScanCache(MAXIMUM_WEIGHT), new File(args[0]), roots).serve();
+    }
+
+    /**
+     * Return the port this server is listening on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Serve requests in a background (daemon) thread.
+     */
+    public ScanServer start() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Stop serving requests and delete the server file. Requests being served are
+     * completed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        executor.shutdown();
+        serverSocket.close();
+        if (!serverFile.delete() && serverFile.exists()) {
+            throw new IOException("Unable to delete " + serverFile);
+        }
+    }
+
+    // package private
+
+    /**
+     * Query the {@code ScanServer} of the specified server file and return the detected
+     * annotations.
+     *
+     * @throws IOException if the server is not available or the scan failed
+     */
+    static List<AnnotationHit> query(final File serverFile, final File[] filesOrDirectories,
+        final String[] pkgNameFilter, final String[] selectors,
+        final boolean skipShadowedClasses) throws IOException {
+
+        final Socket socket = connect(serverFile);
+        try {
+            final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(filesOrDirectories.length);
+            for (final File file : filesOrDirectories) {
+                out.writeUTF(file.getAbsolutePath());
+            }
+            writeStrings(out, pkgNameFilter);
+            writeStrings(out, selectors);
+            out.writeBoolean(skipShadowedClasses);
+            out.flush();
+
+            final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            if (in.readByte() != OK) {
+                throw new IOException("Scan failed: " + in.readUTF());
+            }
+            final int n = in.readInt();
+            if (n < 0) {
+                throw new IOException("Invalid number of hits: " + n);
+            }
+            final List<AnnotationHit> hits = new ArrayList<AnnotationHit>(Math.min(n, 1024));
+            for (int i = 0; i < n; ++i) {
+                final ElementType target = target(in.readUTF());
+                final String annotationName = in.readUTF();
+                final String className = in.readUTF();
+                final String memberName = in.readUTF();
+                hits.add(new AnnotationHit(target, annotationName, className,
+                    target == ElementType.TYPE ? null : memberName));
+            }
+            return hits;
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Connect to the {@code ScanServer} of the specified server file and prove knowledge of
+     * the secret, after the server did. Return the socket, ready to send a request.
+     *
+     * @throws IOException if the server is not available or not authenticated
+     */
+    static Socket connect(final File serverFile) throws IOException {
+        final Properties properties = new Properties();
+        final InputStream stream = new FileInputStream(serverFile);
+        try {
+            properties.load(stream);
+        } finally {
+            stream.close();
+        }
+        final int port;
+        try {
+            port = Integer.parseInt(properties.getProperty("port"));
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid port in " + serverFile, ex);
+        }
+        final String value = properties.getProperty("secret");
+        if (value == null) {
+            throw new IOException("No secret in " + serverFile);
+        }
+        final byte[] secret = value.getBytes("US-ASCII");
+
+        final Socket socket = new Socket();
+        try {
+            socket.connect(
+                new InetSocketAddress(InetAddress.getByName(null), port), CONNECT_TIMEOUT);
+            // a hanging server throws a SocketTimeoutException
+            socket.setSoTimeout(READ_TIMEOUT);
+            final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            final byte[] nonce = new byte[NONCE_SIZE];
+            new SecureRandom().nextBytes(nonce);
+            out.writeInt(MAGIC);
+            out.write(nonce);
+            out.flush();
+
+            final DataInputStream in = new DataInputStream(socket.getInputStream());
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a ScanServer on port " + port);
+            }
+            final byte[] serverNonce = new byte[NONCE_SIZE];
+            in.readFully(serverNonce);
+            final byte[] serverProof = new byte[PROOF_SIZE];
+            in.readFully(serverProof);
+            if (!MessageDigest.isEqual(proof(secret, SERVER, nonce), serverProof)) {
+                throw new IOException("ScanServer on port " + port + " not authenticated");
+            }
+            out.write(proof(secret, CLIENT, serverNonce));
+            out.flush();
+            return socket;
+        } catch (IOException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    // private
+
+    private void serve() {
+        while (!closed) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException ex) {
+                // server socket closed
+                return;
+            } catch (IOException ex) {
+                continue;
+            }
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(socket);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                close(socket);
+                if (closed) {
+                    return;
+                }
+                // too many concurrent requests, the client scans locally
+            }
+        }
+    }
+
+    @SuppressWarnings("illegalcatch")
+    private void handle(final Socket socket) {
+        try {
+            // never let an idle client occupy a thread
+            socket.setSoTimeout(REQUEST_TIMEOUT);
+            final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(MAGIC);
+            if (in.readInt() != MAGIC) {
+                out.writeByte(ERROR);
+                out.writeUTF("Unsupported protocol");
+            } else if (!authenticate(in, out)) {
+                out.writeByte(ERROR);
+                out.writeUTF("Not authorized");
+            } else {
+                // the hits are buffered, so a failed scan never sends a partial result
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try {
+                    final int count = scan(in, new DataOutputStream(bytes));
+                    out.writeByte(OK);
+                    out.writeInt(count);
+                    bytes.writeTo(out);
+                } catch (Exception ex) {
+                    out.writeByte(ERROR);
+                    out.writeUTF(String.valueOf(ex));
+                }
+            }
+            out.flush();
+        } catch (IOException ex) {
+            // client disconnected, ignore
+        } finally {
+            close(socket);
+        }
+    }
+
+    /**
+     * Prove knowledge of the secret to the client and return {@code true} if the client
+     * proves it too.
+     */
+    private boolean authenticate(final DataInputStream in, final DataOutputStream out)
+        throws IOException {
+
+        final byte[] clientNonce = new byte[NONCE_SIZE];
+        in.readFully(clientNonce);
+        final byte[] nonce = new byte[NONCE_SIZE];
+        random.nextBytes(nonce);
+        out.write(nonce);
+        out.write(proof(secret, SERVER, clientNonce));
+        out.flush();
+        final byte[] clientProof = new byte[PROOF_SIZE];
+        in.readFully(clientProof);
+        return MessageDigest.isEqual(proof(secret, CLIENT, nonce), clientProof);
+    }
+
+    /**
+     * Return the HMAC of the specified role and nonce, keyed by the secret.
+     */
+    private static byte[] proof(final byte[] secret, final int role, final byte[] nonce) {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            mac.update((byte)role);
+            return mac.doFinal(nonce);
+        } catch (GeneralSecurityException ex) {
+            // every Java platform supports HmacSHA256
+            throw new IllegalStateException("HmacSHA256 not supported", ex);
+        }
+    }
+
+    /**
+     * Write the port and secret to the specified file, only readable and writable by its
+     * owner. The file is (re)created and restricted before the secret is written.
+     */
+    private static void writeServerFile(final File file, final int port, final String secret)
+        throws IOException {
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+        if (!file.createNewFile()) {
+            throw new IOException("Unable to create " + file);
+        }
+        if (!(file.setReadable(false, false) && file.setWritable(false, false) &&
+            file.setReadable(true, true) && file.setWritable(true, true))) {
+
+            file.delete();
+            throw new IOException("Unable to restrict access to " + file);
+        }
+        final Properties properties = new Properties();
+        properties.setProperty("port", String.valueOf(port));
+        properties.setProperty("secret", secret);
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, "ScanServer");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void close(final Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+    private int scan(final DataInputStream in, final DataOutputStream out)
+        throws IOException {
+
+        final File[] files = new File[readCount(in)];
+        for (int i = 0; i < files.length; ++i) {
+            files[i] = checkRoot(new File(in.readUTF()));
+        }
+        final String[] pkgNameFilter = readStrings(in);
+        final String[] selectors = readStrings(in);
+        final boolean skipShadowedClasses = in.readBoolean();
+
+        final HitWriter writer = new HitWriter(selectors, out);
+        new AnnotationDetector(writer)
+            .scanCache(cache)
+            .skipShadowedClasses(skipShadowedClasses)
+            .detect(new ClassFileIterator(files, pkgNameFilter));
+        if (writer.exception != null) {
+            throw writer.exception;
+        }
+        return writer.count;
+    }
+
+    private static void writeStrings(final DataOutputStream out, final String[] values)
+        throws IOException {
+
+        out.writeInt(values == null ? -1 : values.length);
+        if (values != null) {
+            for (final String value : values) {
+                out.writeUTF(value);
+            }
+        }
+    }
+
+    private static String[] readStrings(final DataInputStream in) throws IOException {
+        final int n = in.readInt();
+        if (n == -1) {
+            return null;
+        }
+        final String[] values = new String[checkCount(n)];
+        for (int i = 0; i < n; ++i) {
+            values[i] = in.readUTF();
+        }
+        return values;
+    }
+
+    /**
+     * Return the specified class path root, read from a client, if it is located below one
+     * of the configured root directories.
+     */
+    private File checkRoot(final File file) throws IOException {
+        final String path = file.getCanonicalPath();
+        for (final String root : roots) {
+            if (path.startsWith(root) || (path + File.separator).equals(root)) {
+                return file;
+            }
+        }
+        throw new IOException("Not below a root directory: " + file);
+    }
+
+    private static int readCount(final DataInputStream in) throws IOException {
+        return checkCount(in.readInt());
+    }
+
+    /**
+     * Return the specified number of files or strings, read from a client, if valid.
+     */
+    private static int checkCount(final int n) throws IOException {
+        if (n < 0 || n > MAX_COUNT) {
+            throw new IOException("Invalid count: " + n);
+        }
+        return n;
+    }
+
+    private static ElementType target(final String name) throws IOException {
+        try {
+            return ElementType.valueOf(name);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid target: " + name, ex);
+        }
+    }
+
+    /**
+     * Writes the detected annotations of a single request.
+     */
+    private static final class HitWriter implements AnnotationDetector.NameReporter {
+
+        private final String[] selectors;
+        private final DataOutputStream out;
+        private int count;
+        private IOException exception;
+
+        HitWriter(final String[] selectors, final DataOutputStream out) {
+            this.selectors = selectors;
+            this.out = out;
+        }
+
+        @Override
+        public String[] annotationNames() {
+            return selectors;
+        }
+
+        @Override
+        public void reportAnnotation(final ElementType target, final String annotationName,
+            final String className, final String memberName) {
+
+            try {
+                out.writeUTF(target.name());
+                out.writeUTF(annotationName);
+                out.writeUTF(className);
+                out.writeUTF(memberName == null ? "" : memberName);
+                ++count;
+            } catch (IOException ex) {
+                exception = ex;
+            }
+        }
+
+    }
+
+}
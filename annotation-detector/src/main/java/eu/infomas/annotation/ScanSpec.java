@@ -0,0 +1,248 @@
+/* ScanSpec.java
+ *
+ * Created: 2026-10-19 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code ScanSpec} is the compiled, immutable part of an {@link AnnotationDetector}: the
+ * annotation matcher, the value predicates and the parse plan (which kinds of declarations
+ * are parsed at all). Compiling a spec is relatively expensive, creating an
+ * {@code AnnotationDetector} for a compiled spec is not. Typical usage:
+ * <pre>
+ * // once
+ * static final ScanSpec SPEC = ScanSpec.of("javax.persistence.*")
+ *     .filter("javax.persistence.Table", ValuePredicate.startsWith("name", "T_"));
+ *
+ * // per scan, in any thread
+ * new AnnotationDetector(SPEC, reporter).detect("com.acme");
+ * </pre>
+ * An {@code AnnotationDetector} is not thread safe. Use a detector per scan (and thread);
+ * all detectors can share the same spec. The buffers used for reading ClassFiles are
+ * pooled, see {@link ClassFileBufferPool}.
+ * <p>
+ * Instances of this class are immutable and thread safe.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+public final class ScanSpec {
+
+    // null if the spec is compiled from selectors
+    private final Class<? extends Annotation>[] annotationTypes;
+    private final String[] selectors;
+    // returns the index of the selector (and annotation type)
+    private final AnnotationMatcher matcher;
+    private final boolean typeAnnotations;
+    private final boolean fieldAnnotations;
+    private final boolean methodAnnotations;
+    // the value predicates per annotation type name, in order of definition
+    private final Map<String, ValuePredicate[]> filters;
+    // null if no value predicates are defined
+    private final AnnotationMatcher filterMatcher;
+    private final ValuePredicate[][] filterPredicates;
+
+    private ScanSpec(final Class<? extends Annotation>[] annotationTypes,
+        final String[] selectors, final AnnotationMatcher matcher,
+        final Map<String, ValuePredicate[]> filters) {
+
+        this.annotationTypes = annotationTypes;
+        this.selectors = selectors;
+        this.matcher = matcher;
+        if (annotationTypes == null) {
+            // the annotation types are not known
+            typeAnnotations = true;
+            fieldAnnotations = true;
+            methodAnnotations = true;
+        } else {
+            // see Target, TYPE_USE (Java 8) is also applicable to type declarations
+            typeAnnotations =
+                isApplicable(annotationTypes, "TYPE", "ANNOTATION_TYPE", "TYPE_USE");
+            fieldAnnotations = isApplicable(annotationTypes, "FIELD");
+            methodAnnotations = isApplicable(annotationTypes, "METHOD", "CONSTRUCTOR");
+        }
+        this.filters = filters;
+        if (filters.isEmpty()) {
+            filterMatcher = null;
+            filterPredicates = null;
+        } else {
+            filterMatcher = AnnotationMatcher.compile(filters.keySet().toArray(new String[0]));
+            filterPredicates = filters.values().toArray(new ValuePredicate[0][]);
+        }
+    }
+
+    /**
+     * Compile a spec for the specified annotation types, for example the annotations of a
+     * {@link AnnotationDetector.Reporter}. Such a spec can be used with all reporters.
+     */
+    public static ScanSpec of(final Class<? extends Annotation>[] annotationTypes) {
+        final Class<? extends Annotation>[] types = annotationTypes.clone();
+        final String[] names = new String[types.length];
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = types[i].getName();
+        }
+        // the index of the matching name is the index in annotationTypes
+        return new ScanSpec(types, names, AnnotationMatcher.compile(names),
+            new LinkedHashMap<String, ValuePredicate[]>());
+    }
+
+    /**
+     * Compile a spec for the specified selectors, see
+     * {@link AnnotationDetector.NameReporter#annotationNames()}. Such a spec can only be
+     * used with a {@code NameReporter} or {@code BatchReporter}.
+     */
+    public static ScanSpec of(final String... selectors) {
+        final String[] names = selectors.clone();
+        return new ScanSpec(null, names, AnnotationMatcher.compile(names),
+            new LinkedHashMap<String, ValuePredicate[]>());
+    }
+
+    /**
+     * Return a new spec, only reporting annotations of the specified type if the specified
+     * predicate on one of its element values is satisfied, see
+     * {@link AnnotationDetector#filter(String, ValuePredicate)}. This spec is not changed.
+     *
+     * @param annotationName the fully qualified name of the annotation type
+     */
+    public ScanSpec filter(final String annotationName, final ValuePredicate predicate) {
+        if (annotationName.endsWith("*")) {
+            throw new IllegalArgumentException("Not an annotation type name: " +
+                annotationName);
+        }
+        if (predicate == null) {
+            throw new IllegalArgumentException("predicate == null");
+        }
+        final Map<String, ValuePredicate[]> map =
+            new LinkedHashMap<String, ValuePredicate[]>(filters);
+        final ValuePredicate[] predicates = map.get(annotationName);
+        if (predicates == null) {
+            map.put(annotationName, new ValuePredicate[] {predicate});
+        } else if (predicates.length == 64) {
+            throw new IllegalArgumentException("Too many predicates for: " + annotationName);
+        } else {
+            final ValuePredicate[] extended =
+                Arrays.copyOf(predicates, predicates.length + 1);
+            extended[predicates.length] = predicate;
+            map.put(annotationName, extended);
+        }
+        // the selector matcher is shared, only the predicates are compiled again
+        return new ScanSpec(annotationTypes, selectors, matcher, map);
+    }
+
+    /**
+     * Return a new spec, only reporting annotations of the specified type if the specified
+     * predicate on one of its element values is satisfied.
+     *
+     * @see #filter(String, ValuePredicate)
+     */
+    public ScanSpec filter(final Class<? extends Annotation> annotation,
+        final ValuePredicate predicate) {
+
+        return filter(annotation.getName(), predicate);
+    }
+
+    /**
+     * Return a copy of the selectors (or annotation type names) of this spec.
+     */
+    public String[] getSelectors() {
+        return selectors.clone();
+    }
+
+    // package private
+
+    /**
+     * Return the annotation types, indexed by {@link #matcher()} match, or {@code null}
+     * if the spec is compiled from selectors.
+     */
+    Class<? extends Annotation>[] annotationTypes() {
+        return annotationTypes;
+    }
+
+    String[] selectors() {
+        return selectors;
+    }
+
+    AnnotationMatcher matcher() {
+        return matcher;
+    }
+
+    boolean hasFilters() {
+        return filterMatcher != null;
+    }
+
+    AnnotationMatcher filterMatcher() {
+        return filterMatcher;
+    }
+
+    ValuePredicate[] filterPredicates(final int match) {
+        return filterPredicates[match];
+    }
+
+    /**
+     * Return {@code true} if annotations on type declarations can be reported.
+     */
+    boolean parseTypeAnnotations() {
+        return typeAnnotations;
+    }
+
+    boolean parseFieldAnnotations() {
+        return fieldAnnotations;
+    }
+
+    boolean parseMethodAnnotations() {
+        return methodAnnotations;
+    }
+
+    // private
+
+    /**
+     * Return {@code true} if at least one of the specified annotation types is applicable
+     * to one of the specified kinds of declarations, see {@link Target}. The names of the
+     * {@link ElementType} constants are used, because not all constants are available in
+     * all Java versions.
+     */
+    private static boolean isApplicable(final Class<? extends Annotation>[] types,
+        final String... elementTypes) {
+
+        for (final Class<? extends Annotation> type : types) {
+            final Target target = type.getAnnotation(Target.class);
+            if (target == null) {
+                // applicable to all declarations
+                return true;
+            }
+            for (final ElementType elementType : target.value()) {
+                for (final String name : elementTypes) {
+                    if (name.equals(elementType.name())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,109 @@
+/* ValuePredicate.java
+ *
+ * Created: 2026-10-18 (Year-Month-Day)
+ * Character encoding: UTF-8
+ *
+ ****************************************** LICENSE *******************************************
+ *
+ * Copyright (c) 2026 XIAM Solutions B.V. (http://www.xiam.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.infomas.annotation;
+
+/**
+ * {@code ValuePredicate} is a condition on the value of a named annotation element, see
+ * {@link AnnotationDetector#filter(String, ValuePredicate)}.
+ * <p>
+ * Predicates are evaluated while parsing the Java ClassFile, directly on the (modified
+ * UTF-8) bytes of the constant pool. Annotations not satisfying the predicates are
+ * skipped before any String is decoded or any reporter is called.
+ * <p>
+ * Note that only element values explicitly specified in the source code are stored in
+ * the ClassFile of the annotated type. An element using its default value never
+ * satisfies a predicate. Instances are immutable.
+ *
+ * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
+ * @since annotation-detector 3.0.6
+ */
+public final class ValuePredicate {
+
+    static final int EQUAL_TO = 0;
+    static final int STARTS_WITH = 1;
+    static final int ENUM_CONSTANT = 2;
+    static final int ARRAY_CONTAINS = 3;
+
+    private static final String[] NAMES = {
+        "equalTo", "startsWith", "enumConstant", "arrayContains"
+    };
+
+    final int kind;
+    // modified UTF-8 bytes, as stored in the constant pool
+    final byte[] element;
+    final byte[] operand;
+    private final String elementName;
+    private final String value;
+
+    private ValuePredicate(final int kind, final String elementName, final String value) {
+        if (elementName == null || value == null) {
+            throw new IllegalArgumentException("elementName and value must be specified");
+        }
+        this.kind = kind;
+        this.elementName = elementName;
+        this.value = value;
+        this.element = AnnotationMatcher.modifiedUtf8(elementName);
+        this.operand = AnnotationMatcher.modifiedUtf8(value);
+    }
+
+    /**
+     * The {@code String} element with the specified name must be equal to the specified
+     * value, for example {@code equalTo("value", "prod")}.
+     */
+    public static ValuePredicate equalTo(final String elementName, final String value) {
+        return new ValuePredicate(EQUAL_TO, elementName, value);
+    }
+
+    /**
+     * The {@code String} element with the specified name must start with the specified
+     * prefix.
+     */
+    public static ValuePredicate startsWith(final String elementName, final String prefix) {
+        return new ValuePredicate(STARTS_WITH, elementName, prefix);
+    }
+
+    /**
+     * The {@code enum} element with the specified name must be the enum constant with the
+     * specified name, for example {@code enumConstant("fetch", "LAZY")}. The enum type
+     * itself is not compared.
+     */
+    public static ValuePredicate enumConstant(final String elementName,
+        final String constantName) {
+
+        return new ValuePredicate(ENUM_CONSTANT, elementName, constantName);
+    }
+
+    /**
+     * The array element with the specified name must contain a {@code String} equal to,
+     * or an enum constant named as, the specified value, for example
+     * {@code arrayContains("name", "x")}.
+     */
+    public static ValuePredicate arrayContains(final String elementName, final String value) {
+        return new ValuePredicate(ARRAY_CONTAINS, elementName, value);
+    }
+
+    @Override
+    public String toString() {
+        return NAMES[kind] + "(\"" + elementName + "\", \"" + value + "\")";
+    }
+
+}
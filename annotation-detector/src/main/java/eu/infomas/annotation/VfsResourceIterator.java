@@ -21,12 +21,23 @@
  */
 package eu.infomas.annotation;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URL;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.VirtualFileFilter;
 
 /**
  * {@code VfsResourceIterator} is a {@link ResourceIterator} for the JBoss Virtual File System
@@ -40,6 +51,11 @@ import org.jboss.vfs.VirtualFile;
  *
  * Known VFS protocols are "vfs", "vfsfile", "vfszip", "vfsjar", and "vfsmemory".
  *
+ * The directory trees are traversed lazily (depth first), so the first ClassFile is
+ * returned without listing the complete tree. Only directories and {@code .class} files
+ * are listed, other files are never returned by VFS. Optionally the ClassFiles are read
+ * concurrently, while the tree is still traversed by the calling thread.
+ *
  * Also see
  * <li>https://github.com/rmuller/infomas-asl/issues/29
  * <li>https://github.com/jersey/jersey/pull/100
@@ -50,26 +66,107 @@ import org.jboss.vfs.VirtualFile;
  */
 final class VfsResourceIterator extends ResourceIterator {
 
+    private static final VirtualFileFilter CLASS_FILES = new VirtualFileFilter() {
+        @Override
+        public boolean accepts(final VirtualFile file) {
+            final String name = file.getName();
+            return file.isDirectory() ||
+                name.endsWith(".class") && !ClassFileIterator.isModuleOrPackageInfo(name);
+        }
+    };
+
+    private final Deque<VirtualFile> stack = new LinkedList<VirtualFile>();
 
-    private final List<VirtualFile> files;
-    private int index = -1;
+    // only used when reading concurrently
+    private ExecutorService executor;
+    private int maxPending;
+    private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+
+    /**
+     * Create a new {@code VfsResourceIterator} returning the ClassFiles of all specified
+     * VFS URL's, in the specified order.
+     */
+    VfsResourceIterator(final Collection<URL> urls) throws IOException {
+        for (final URL url : urls) {
+            stack.addFirst((VirtualFile)url.getContent());
+        }
+    }
 
-    VfsResourceIterator(final URL url) throws IOException {
-        final VirtualFile vFile = (VirtualFile)url.getContent();
-        files = vFile.getChildrenRecursively();
+    /**
+     * Read the ClassFiles concurrently, using the specified {@code ExecutorService} with the
+     * specified number of threads. ClassFiles are still returned in traversal order.
+     */
+    void readAhead(final ExecutorService executorService, final int threads) {
+        this.executor = executorService;
+        // keep all workers busy, but limit the memory used by read ahead entries
+        this.maxPending = threads * 2;
     }
 
     @Override
     public InputStream next() throws IOException {
-        while (true) {
-            if (++index >= files.size()) {
-                // no files
-                return null;
+        if (executor == null) {
+            final VirtualFile f = nextFile();
+            return f == null ? null : f.openStream();
+        }
+        while (pending.size() < maxPending) {
+            final VirtualFile f = nextFile();
+            if (f == null) {
+                break;
             }
-            final VirtualFile f = files.get(index);
-            if (f.isFile() && f.getName().endsWith(".class")) {
-                return f.openStream();
+            pending.add(executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return readFully(f);
+                }
+            }));
+        }
+        return pending.isEmpty() ? null : new ByteArrayInputStream(get(pending.removeFirst()));
+    }
+
+    // private
+
+    private VirtualFile nextFile() throws IOException {
+        while (!stack.isEmpty()) {
+            final VirtualFile f = stack.removeLast();
+            if (f.isDirectory()) {
+                final List<VirtualFile> children = f.getChildren(CLASS_FILES);
+                for (int i = children.size() - 1; i >= 0; --i) {
+                    stack.add(children.get(i));
+                }
+            } else if (f.isFile()) {
+                return f;
+            }
+        }
+        // no more files
+        return null;
+    }
+
+    private static byte[] readFully(final VirtualFile file) throws IOException {
+        final InputStream in = file.openStream();
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(8 * 1024);
+            final byte[] buffer = new byte[8 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] get(final Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading VFS files");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException)ex.getCause();
             }
+            throw new IOException("Unable to read VFS file", ex.getCause());
         }
     }
 
@@ -21,9 +21,23 @@
  */
 package eu.infomas.annotation;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -34,18 +48,58 @@ import java.util.zip.ZipFile;
  * It is possible to specify an (optional) entry name filter.
  * <p>
  * The most efficient way of iterating is used, see benchmark in test classes.
+ * <p>
+ * Optionally, the entries of large ZIP files are read and inflated concurrently by
+ * several worker threads. The central directory is split in ranges of entries, every
+ * range is read by one worker. Entries are always returned in central directory order.
+ * <p>
+ * Optionally, entries shadowing a ClassFile already returned (from this or a previous
+ * ZIP file) are skipped. In that mode, the versioned entries of a multi-release jar are
+ * resolved as the class loader of the running JVM would: a ClassFile is only returned
+ * from the highest {@code META-INF/versions/N/} directory not exceeding the Java version
+ * and only if the jar manifest declares {@code Multi-Release: true}.
+ * <p>
+ * Optionally, entries selected by a {@link ResourceFilter} are reported to its
+ * {@code ResourceReporter} instead of being returned, independent of the entry name
+ * filter. So other resources are found in the same pass over the ZIP file.
  *
  * @author <a href="mailto:rmuller@xiam.nl">Ronald K. Muller</a>
  * @since annotation-detector 3.0.0
  */
 final class ZipFileIterator {
 
+    // only ZIP files with at least this number of entries are read concurrently
+    private static final int PARALLEL_THRESHOLD = 512;
+    // the number of entries read by a worker in one task
+    private static final int RANGE_SIZE = 64;
+    private static final String VERSIONS = "META-INF/versions/";
+    // the feature version of the running JVM, for example 8 or 17
+    private static final int JAVA_VERSION = javaVersion();
+
     private final ZipFile zipFile;
     private final String[] entryNameFilter;
     private final Enumeration<? extends ZipEntry> entries;
 
     private ZipEntry current;
 
+    // only used when skipping shadowed ClassFiles, see ClassFileIterator
+    private Set<String> classNames;
+    // the name of the entry selected per versioned ClassFile of a multi-release jar
+    private Map<String, String> versioned;
+    // only used when reporting resources
+    private ResourceFilter resources;
+    private List<ZipEntry> resourceEntries;
+
+    // only used when reading concurrently
+    private List<ZipEntry> accepted;
+    private ExecutorService executor;
+    private int maxPending;
+    private final LinkedList<Future<byte[][]>> pending = new LinkedList<Future<byte[][]>>();
+    private int submitted;
+    private int index;
+    private byte[][] range;
+    private int rangeIndex;
+
     /**
      * Create a new {@code ZipFileIterator} instance.
      * 
@@ -60,41 +114,295 @@ final class ZipFileIterator {
         this.entries = zipFile.entries();
     }
 
+    /**
+     * Create a new {@code ZipFileIterator} instance, reading and inflating the entries of
+     * large ZIP files concurrently using the specified {@code ExecutorService}.
+     *
+     * @param zipFile The ZIP file used to iterate over all entries
+     * @param entryNameFilter (optional) file name filter. Only entry names starting with
+     * one of the specified names in the filter are returned
+     * @param executor the (optional) {@code ExecutorService} used to read entries
+     * @param parallelism the number of threads used by the {@code ExecutorService}
+     * @param classNames the (optional) names of all ClassFiles already returned, entries
+     * with one of these names are skipped and the names of returned entries are added
+     * @param resources the (optional) filter of the resources to report
+     */
+    ZipFileIterator(final ZipFile zipFile, final String[] entryNameFilter,
+        final ExecutorService executor, final int parallelism,
+        final Set<String> classNames, final ResourceFilter resources) throws IOException {
+
+        this(zipFile, entryNameFilter);
+        this.resources = resources;
+        if (classNames != null) {
+            this.classNames = classNames;
+            this.versioned = selectVersions(zipFile);
+        }
+        if (executor != null && zipFile.size() >= PARALLEL_THRESHOLD) {
+            this.accepted = new ArrayList<ZipEntry>(zipFile.size());
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                if (isResource(entry)) {
+                    if (resourceEntries == null) {
+                        resourceEntries = new ArrayList<ZipEntry>();
+                    }
+                    resourceEntries.add(entry);
+                } else if (accept(entry)) {
+                    accepted.add(entry);
+                }
+            }
+            this.executor = executor;
+            // keep all workers busy, but limit the memory used by read ahead entries
+            this.maxPending = parallelism * 2;
+        }
+    }
+
     public ZipEntry getEntry() {
         return current;
     }
 
     @SuppressWarnings("emptyblock")
     public InputStream next() throws IOException {
+        if (accepted != null) {
+            return nextReadAhead();
+        }
         while (entries.hasMoreElements()) {
             current = entries.nextElement();
-            if (accept(current)) {
+            if (isResource(current)) {
+                resources.report(current.getName(), zipFile.getInputStream(current));
+            } else if (accept(current)) {
                 return zipFile.getInputStream(current);
             }
         }
+        close();
+        return null;
+    }
+
+    // private
+
+    private InputStream nextReadAhead() throws IOException {
+        if (resourceEntries != null) {
+            // report the resources before the ClassFiles, the order is not defined
+            final List<ZipEntry> list = resourceEntries;
+            resourceEntries = null;
+            for (final ZipEntry entry : list) {
+                resources.report(entry.getName(), zipFile.getInputStream(entry));
+            }
+        }
+        if (index >= accepted.size()) {
+            close();
+            return null;
+        }
+        while (pending.size() < maxPending && submitted < accepted.size()) {
+            final int start = submitted;
+            submitted = Math.min(start + RANGE_SIZE, accepted.size());
+            pending.add(executor.submit(new RangeReader(start, submitted)));
+        }
+        if (range == null || rangeIndex == range.length) {
+            range = get(pending.removeFirst());
+            rangeIndex = 0;
+        }
+        current = accepted.get(index++);
+        final byte[] bytes = range[rangeIndex];
+        // release memory as soon as possible
+        range[rangeIndex++] = null;
+        return new ByteArrayInputStream(bytes);
+    }
+
+    private static byte[][] get(final Future<byte[][]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading ZIP file entries");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException)ex.getCause();
+            }
+            throw new IOException("Unable to read ZIP file entries", ex.getCause());
+        }
+    }
+
+    private void close() {
         // no more entries in this ZipFile, so close ZipFile
+        for (final Future<byte[][]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
         try {
             // zipFile is never null here
             zipFile.close();
         } catch (IOException ex) {
             // suppress IOException, otherwise close() is called twice
         }
-        return null;
+    }
+
+    private boolean isResource(final ZipEntry entry) {
+        return resources != null && !entry.isDirectory() && resources.accept(entry.getName());
     }
 
     private boolean accept(final ZipEntry entry) {
-        if (entry.isDirectory()) {
+        if (entry.isDirectory() || ClassFileIterator.isModuleOrPackageInfo(entry.getName())) {
             return false;
         }
+        final String name = classNames == null ? entry.getName() : className(entry.getName());
+        if (name == null || !matches(name)) {
+            return false;
+        }
+        // first wins, as the class loader would
+        return classNames == null || classNames.add(name);
+    }
+
+    private boolean matches(final String name) {
         if (entryNameFilter == null) {
             return true;
         }
         for (final String filter : entryNameFilter) {
-            if (entry.getName().startsWith(filter)) {
+            if (name.startsWith(filter)) {
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * Return the name of the ClassFile as seen by the class loader, or {@code null} if the
+     * entry is never loaded because another version of the ClassFile is selected.
+     */
+    private String className(final String entryName) {
+        if (entryName.startsWith(VERSIONS)) {
+            final int end = entryName.indexOf('/', VERSIONS.length());
+            if (end < 0) {
+                return null;
+            }
+            final String name = entryName.substring(end + 1);
+            return entryName.equals(versioned.get(name)) ? name : null;
+        }
+        return versioned.containsKey(entryName) ? null : entryName;
+    }
+
+    /**
+     * Return, per versioned ClassFile of a multi-release jar, the name of the entry
+     * selected for the running JVM. Only the central directory and the (small) manifest
+     * are read, no ClassFile is inflated.
+     */
+    private static Map<String, String> selectVersions(final ZipFile zipFile)
+        throws IOException {
+
+        Map<String, String> selected = null;
+        final Map<String, Integer> versions = new HashMap<String, Integer>();
+        final Enumeration<? extends ZipEntry> e = zipFile.entries();
+        while (e.hasMoreElements()) {
+            final String entryName = e.nextElement().getName();
+            if (!entryName.startsWith(VERSIONS) || !entryName.endsWith(".class")) {
+                continue;
+            }
+            final int end = entryName.indexOf('/', VERSIONS.length());
+            final int version = end < 0 ? Integer.MAX_VALUE :
+                parseInt(entryName.substring(VERSIONS.length(), end));
+            if (version > JAVA_VERSION) {
+                continue;
+            }
+            final String name = entryName.substring(end + 1);
+            final Integer previous = versions.get(name);
+            if (previous == null || previous < version) {
+                if (selected == null) {
+                    selected = new HashMap<String, String>();
+                }
+                versions.put(name, version);
+                selected.put(name, entryName);
+            }
+        }
+        if (selected == null || !isMultiRelease(zipFile)) {
+            // versioned entries are ignored by the class loader
+            return Collections.emptyMap();
+        }
+        return selected;
+    }
+
+    private static boolean isMultiRelease(final ZipFile zipFile) throws IOException {
+        final ZipEntry entry = zipFile.getEntry("META-INF/MANIFEST.MF");
+        if (entry == null) {
+            return false;
+        }
+        final InputStream in = zipFile.getInputStream(entry);
+        try {
+            return "true".equalsIgnoreCase(
+                new Manifest(in).getMainAttributes().getValue("Multi-Release"));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int javaVersion() {
+        // "1.8" up to Java 8, "9", "17", etc. since Java 9
+        String version = System.getProperty("java.specification.version", "1.6");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        final int dot = version.indexOf('.');
+        final int javaVersion = parseInt(dot < 0 ? version : version.substring(0, dot));
+        return javaVersion == Integer.MAX_VALUE ? 8 : javaVersion;
+    }
+
+    private static int parseInt(final String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Reads (and inflates) a range of accepted entries, executed by a worker thread.
+     */
+    private final class RangeReader implements Callable<byte[][]> {
+
+        private final int start;
+        private final int end;
+
+        RangeReader(final int start, final int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public byte[][] call() throws IOException {
+            final byte[][] result = new byte[end - start][];
+            for (int i = start; i < end; ++i) {
+                final ZipEntry entry = accepted.get(i);
+                final InputStream in = zipFile.getInputStream(entry);
+                try {
+                    result[i - start] = readFully(in, entry.getSize());
+                } finally {
+                    in.close();
+                }
+            }
+            return result;
+        }
+
+        private byte[] readFully(final InputStream in, final long size) throws IOException {
+            byte[] bytes = new byte[size < 0 ? 8 * 1024 : (int)size];
+            int length = 0;
+            int n;
+            while ((n = in.read(bytes, length, bytes.length - length)) > 0) {
+                length += n;
+                if (length == bytes.length) {
+                    if (size >= 0) {
+                        break;
+                    }
+                    final byte[] grown = new byte[bytes.length * 2];
+                    System.arraycopy(bytes, 0, grown, 0, length);
+                    bytes = grown;
+                }
+            }
+            if (length == bytes.length) {
+                return bytes;
+            }
+            final byte[] result = new byte[length];
+            System.arraycopy(bytes, 0, result, 0, length);
+            return result;
+        }
+
+    }
+
 }
@@ -1,13 +1,39 @@
 package eu.infomas.annotation;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import static eu.infomas.util.TestSupport.*;
 
@@ -107,6 +133,17 @@ public final class AnnotationDetectorTest {
         }
     }
 
+    @Test
+    public void testParallelReading() throws IOException {
+        final CountingReporter expected = new CountingReporter(Deprecated.class);
+        new AnnotationDetector(expected).detect(RT_JAR);
+        final CountingReporter counter = new CountingReporter(Deprecated.class);
+        new AnnotationDetector(counter).parallelism(4).detect(RT_JAR);
+        assertEquals(expected.getTypeCount(), counter.getTypeCount());
+        assertEquals(expected.getFieldCount(), counter.getFieldCount());
+        assertEquals(expected.getMethodCount(), counter.getMethodCount());
+    }
+
     @Test
     public void testMethodAnnotationsOnCompleteClasspath() throws IOException {
         final long time = System.currentTimeMillis();
@@ -118,7 +155,7 @@ public final class AnnotationDetectorTest {
         if (DEBUG) log("Time: %d ms.", System.currentTimeMillis() - time);
         assertEquals(0, counter.getTypeCount());
         assertEquals(0, counter.getFieldCount());
-        assertEquals(15, counter.getMethodCount());
+        assertEquals(testMethodCount(), counter.getMethodCount());
     }
 
     @Test
@@ -133,9 +170,543 @@ public final class AnnotationDetectorTest {
         if (DEBUG) log("Time: %d ms.", System.currentTimeMillis() - time);
         assertEquals(0, counter.getTypeCount());
         assertEquals(0, counter.getFieldCount());
-        assertEquals(15, counter.getMethodCount());
+        assertEquals(testMethodCount(), counter.getMethodCount());
     }
     
+    @Test
+    public void testMethodAnnotationsClassLoaderHierarchy() throws IOException {
+        final CountingReporter counter = new CountingReporter(Test.class);
+        final AnnotationDetector cf = new AnnotationDetector(counter);
+        cf.walkClassLoaderHierarchy(true).detect("eu.infomas");
+        // second call is answered from the cached class path roots
+        cf.detect("eu.infomas");
+        assertEquals(0, counter.getTypeCount());
+        assertEquals(0, counter.getFieldCount());
+        assertEquals(2 * testMethodCount(), counter.getMethodCount());
+    }
+
+    @Test
+    public void testNameReporter() throws IOException {
+        final CountingReporter expected = new CountingReporter(Deprecated.class);
+        new AnnotationDetector(expected).detect(RT_JAR);
+        final NameCountingReporter counter = new NameCountingReporter("java.lang.Deprecated");
+        new AnnotationDetector(counter).detect(RT_JAR);
+        assertEquals(expected.getTypeCount() + expected.getFieldCount() +
+            expected.getMethodCount(), counter.count);
+
+        // all annotations in this package, without loading the annotation classes
+        final NameCountingReporter wildcard = new NameCountingReporter("eu.infomas.annotation.*");
+        new AnnotationDetector(wildcard).detect("eu.infomas.annotation");
+        assertEquals(2 + 1 + 2, wildcard.count);
+        assertTrue(wildcard.names.contains("eu.infomas.annotation.RuntimeInvisibleTestAnnotation"));
+    }
+
+    @Test
+    public void testValuePredicates() throws IOException {
+        // all annotation types have a @Retention, with one of the RetentionPolicy constants
+        final NameCountingReporter all =
+            new NameCountingReporter("java.lang.annotation.Retention");
+        new AnnotationDetector(all).detect(RT_JAR);
+        int sum = 0;
+        for (final RetentionPolicy policy : RetentionPolicy.values()) {
+            final NameCountingReporter counter =
+                new NameCountingReporter("java.lang.annotation.Retention");
+            new AnnotationDetector(counter)
+                .filter(Retention.class, ValuePredicate.enumConstant("value", policy.name()))
+                .detect(RT_JAR);
+            assertTrue(counter.count < all.count);
+            sum += counter.count;
+        }
+        assertEquals(all.count, sum);
+
+        // only the annotation on TestSupport.ValuePredicateFixture has a name starting with
+        // "filter"
+        final CountingReporter counter = new CountingReporter(RuntimeVisibleTestAnnotation.class);
+        new AnnotationDetector(counter)
+            .filter(RuntimeVisibleTestAnnotation.class, ValuePredicate.startsWith("name", "filter"))
+            .detect("eu.infomas");
+        assertEquals(0, counter.getTypeCount() + counter.getFieldCount());
+        assertEquals(1, counter.getMethodCount());
+    }
+
+    @Test
+    public void testSharedScanSpec() throws Exception {
+        @SuppressWarnings("unchecked")
+        final ScanSpec all =
+            ScanSpec.of(new CountingReporter(RuntimeVisibleTestAnnotation.class).annotations());
+        final ScanSpec spec =
+            all.filter(RuntimeVisibleTestAnnotation.class, ValuePredicate.startsWith("name", "filter"));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<CountingReporter>> futures =
+                new ArrayList<Future<CountingReporter>>();
+            for (int i = 0; i < 8; ++i) {
+                futures.add(executor.submit(new Callable<CountingReporter>() {
+                    @Override
+                    public CountingReporter call() throws IOException {
+                        @SuppressWarnings("unchecked")
+                        final CountingReporter counter = new CountingReporter();
+                        new AnnotationDetector(spec, counter).detect("eu.infomas");
+                        return counter;
+                    }
+                }));
+            }
+            for (final Future<CountingReporter> future : futures) {
+                final CountingReporter counter = future.get();
+                assertEquals(0, counter.getTypeCount() + counter.getFieldCount());
+                assertEquals(1, counter.getMethodCount());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // the spec is not changed by filter()
+        final NameCountingReporter counter = new NameCountingReporter();
+        new AnnotationDetector(all, counter).detect("eu.infomas.annotation");
+        assertTrue(counter.count > 1);
+    }
+
+    @Test
+    public void testParsePlanSkipsMembers() throws IOException {
+        // @Documented is only applicable to annotation types, so fields and methods are
+        // skipped without resolving names, a NameReporter always parses all members
+        final CountingReporter counter = new CountingReporter(Documented.class);
+        new AnnotationDetector(counter).detect(RT_JAR);
+        final NameCountingReporter expected =
+            new NameCountingReporter("java.lang.annotation.Documented");
+        new AnnotationDetector(expected).detect(RT_JAR);
+        assertTrue(counter.getTypeCount() > 0);
+        assertEquals(expected.count, counter.getTypeCount());
+        assertEquals(0, counter.getFieldCount() + counter.getMethodCount());
+    }
+
+    @Test
+    public void testScanServer() throws IOException {
+        final File classes = new File("target/test-classes");
+        final CountingReporter local = new CountingReporter(Test.class);
+        new AnnotationDetector(local).detect(classes);
+
+        final File jar = new File("src/test/resources/test.jar.extension");
+        final File serverFile = new File("target/scan-server.properties");
+        final ScanCache cache = new ScanCache(1024 * 1024);
+        final ScanServer server = new ScanServer(0, cache, serverFile,
+            new File("target"), new File("src/test/resources")).start();
+        final int port = server.getPort();
+        try {
+            final CountingReporter remote = new CountingReporter(Test.class);
+            new AnnotationDetector(remote).scanServer(serverFile).detect(classes, jar);
+            assertEquals(local.getMethodCount(), remote.getMethodCount());
+            // the jar file is parsed by the server
+            final long misses = cache.getMissCount();
+            assertTrue(misses > 0);
+
+            // a root outside the root directories is refused, so scanned locally
+            final CountingReporter expected = new CountingReporter(Deprecated.class);
+            new AnnotationDetector(expected).detect(RT_JAR);
+            final CountingReporter refused = new CountingReporter(Deprecated.class);
+            new AnnotationDetector(refused).scanServer(serverFile).detect(RT_JAR);
+            assertEquals(expected.getTypeCount(), refused.getTypeCount());
+            assertEquals(misses, cache.getMissCount());
+
+            // an invalid request is answered with an error
+            Socket socket = ScanServer.connect(serverFile);
+            try {
+                final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeInt(-1);
+                out.flush();
+                final DataInputStream in = new DataInputStream(socket.getInputStream());
+                assertEquals(0, in.readByte());
+                assertTrue(in.readUTF().contains("Invalid count"));
+            } finally {
+                socket.close();
+            }
+
+            // a client not knowing the secret is refused
+            socket = new Socket(InetAddress.getByName(null), port);
+            try {
+                final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeInt(0x41534c31);
+                out.write(new byte[16]);
+                out.flush();
+                final DataInputStream in = new DataInputStream(socket.getInputStream());
+                assertEquals(0x41534c31, in.readInt());
+                in.readFully(new byte[16 + 32]);
+                out.write(new byte[32]);
+                out.flush();
+                assertEquals(0, in.readByte());
+                assertEquals("Not authorized", in.readUTF());
+            } finally {
+                socket.close();
+            }
+        } finally {
+            server.close();
+        }
+        assertFalse(serverFile.exists());
+        // server not available, scanned locally
+        final CountingReporter fallback = new CountingReporter(Test.class);
+        new AnnotationDetector(fallback).scanServer(serverFile).detect(classes);
+        assertEquals(local.getMethodCount(), fallback.getMethodCount());
+    }
+
+    @Test
+    public void testBatchReporter() throws IOException {
+        final NameCountingReporter expected = new NameCountingReporter("org.junit.Test");
+        new AnnotationDetector(expected).detect("eu.infomas");
+
+        final List<String> methods = new ArrayList<String>();
+        final int[] batches = new int[1];
+        new AnnotationDetector(new AnnotationDetector.BatchReporter() {
+            @Override
+            public String[] annotationNames() {
+                return new String[] {"org.junit.Test"};
+            }
+
+            @Override
+            public void reportBatch(final HitBatch batch) {
+                assertTrue(batch.size() > 0 && batch.size() <= 8);
+                ++batches[0];
+                for (int i = 0; i < batch.size(); ++i) {
+                    assertEquals(ElementType.METHOD, batch.target(i));
+                    assertEquals("org.junit.Test", batch.symbol(batch.annotationIds()[i]));
+                    methods.add(batch.symbol(batch.classIds()[i]) + '#' +
+                        batch.symbol(batch.memberIds()[i]));
+                }
+            }
+        }, 8).detect("eu.infomas");
+        assertEquals(expected.count, methods.size());
+        assertEquals((methods.size() + 7) / 8, batches[0]);
+    }
+
+    @Test
+    public void testDetectAsync() throws Exception {
+        final CountingReporter expected = new CountingReporter(Deprecated.class);
+        new AnnotationDetector(expected).detect(RT_JAR);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // a small queue, so the scan must wait for this thread
+            final AnnotationHitQueue hits = new AnnotationHitQueue(4, "java.lang.Deprecated");
+            final Future<Void> future = new AnnotationDetector(hits).detectAsync(executor, RT_JAR);
+            int count = 0;
+            while (hits.take() != null) {
+                ++count;
+            }
+            future.get();
+            final int total = expected.getTypeCount() + expected.getFieldCount() +
+                expected.getMethodCount();
+            assertEquals(total, count);
+
+            final ScanResult.Collector collector =
+                new ScanResult.Collector("java.lang.Deprecated");
+            final Future<ScanResult> result =
+                new AnnotationDetector(collector).detectAsync(executor, collector, RT_JAR);
+            assertEquals(total, result.get().size());
+
+            // complete class path
+            final AnnotationHitQueue tests = new AnnotationHitQueue(4, "org.junit.Test");
+            final Future<Void> scan = new AnnotationDetector(tests).detectAsync(executor);
+            count = 0;
+            while (tests.take() != null) {
+                ++count;
+            }
+            scan.get();
+            assertEquals(testMethodCount(), count);
+            final ScanResult.Collector testCollector = new ScanResult.Collector("org.junit.Test");
+            assertEquals(testMethodCount(), new AnnotationDetector(testCollector)
+                .detectAsync(executor, testCollector).get().size());
+        } finally {
+            executor.shutdown();
+        }
+        // a rejected scan never runs, the consumer must not wait for it
+        final AnnotationHitQueue hits = new AnnotationHitQueue(4, "java.lang.Deprecated");
+        try {
+            new AnnotationDetector(hits).detectAsync(executor, RT_JAR);
+            fail("RejectedExecutionException expected");
+        } catch (RejectedExecutionException ex) {
+            assertNull(hits.take());
+        }
+    }
+
+    @Test
+    public void testInMemoryClassFile() throws IOException {
+        // the ClassFile does not start at offset 0
+        final byte[] classFile = readClassFile(7);
+
+        @SuppressWarnings("unchecked")
+        final CountingReporter counter = new CountingReporter(
+            RuntimeVisibleTestAnnotations.class,
+            RuntimeVisibleTestAnnotation.class,
+            RuntimeInvisibleTestAnnotation.class);
+        final AnnotationDetector cf = new AnnotationDetector(counter);
+        cf.detect("AnnotationDetectorTest", classFile, 7, classFile.length - 7);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(classFile.length);
+        direct.put(classFile).position(7);
+        cf.detect("AnnotationDetectorTest", direct);
+        assertEquals(7, direct.position());
+        assertEquals(2 * 2, counter.getTypeCount());
+        assertEquals(2 * 1, counter.getFieldCount());
+        assertEquals(2 * 2, counter.getMethodCount());
+
+        // truncated ClassFile
+        final List<String> names = new ArrayList<String>();
+        cf.errorReporter(new AnnotationDetector.ErrorReporter() {
+            @Override
+            public void reportError(final String name, final String message) {
+                names.add(name);
+            }
+        }).detect("truncated", classFile, 7, 100);
+        assertEquals(Arrays.asList("truncated"), names);
+    }
+
+    @Test
+    public void testAgent() throws IOException {
+        final byte[] classFile = readClassFile(0);
+
+        @SuppressWarnings("unchecked")
+        final CountingReporter counter = new CountingReporter(
+            RuntimeVisibleTestAnnotations.class,
+            RuntimeVisibleTestAnnotation.class,
+            RuntimeInvisibleTestAnnotation.class);
+        final AnnotationDetector cf = new AnnotationDetector(counter);
+        final AnnotationAgent agent = new AnnotationAgent();
+        AnnotationAgent.register(cf);
+        try {
+            final String name = "eu/infomas/annotation/AnnotationDetectorTest";
+            assertEquals(null, agent.transform(null, name, null, null, classFile));
+            // redefined classes are not reported again
+            agent.transform(null, name, AnnotationDetectorTest.class, null, classFile);
+        } finally {
+            AnnotationAgent.unregister(cf);
+        }
+        agent.transform(null, "eu/infomas/annotation/AnnotationDetectorTest", null, null,
+            classFile);
+        assertEquals(2, counter.getTypeCount());
+        assertEquals(1, counter.getFieldCount());
+        assertEquals(2, counter.getMethodCount());
+
+        // a class loaded by another thread while the detector is in use is queued, the
+        // loading thread never waits for the detector
+        final String name = "eu/infomas/annotation/AnnotationDetectorTest";
+        final Thread[] loader = new Thread[1];
+        final boolean[] waiting = new boolean[1];
+        final NameCountingReporter reporter = new NameCountingReporter(
+            "eu.infomas.annotation.RuntimeVisibleTestAnnotation") {
+            @Override
+            public void reportAnnotation(final ElementType target,
+                final String annotationName, final String className,
+                final String memberName) {
+
+                super.reportAnnotation(target, annotationName, className, memberName);
+                if (loader[0] == null) {
+                    loader[0] = new Thread() {
+                        @Override
+                        public void run() {
+                            agent.transform(null, name, null, null, classFile);
+                        }
+                    };
+                    loader[0].start();
+                    try {
+                        loader[0].join(10000);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    waiting[0] = loader[0].isAlive();
+                }
+            }
+        };
+        final AnnotationDetector detector = new AnnotationDetector(reporter);
+        AnnotationAgent.register(detector);
+        try {
+            agent.transform(null, name, null, null, classFile);
+        } finally {
+            AnnotationAgent.unregister(detector);
+        }
+        assertFalse(waiting[0]);
+        final NameCountingReporter expected = new NameCountingReporter(
+            "eu.infomas.annotation.RuntimeVisibleTestAnnotation");
+        new AnnotationDetector(expected).detect(name, classFile, 0, classFile.length);
+        assertEquals(2 * expected.count, reporter.count);
+
+        // a class loaded by a reporter during a scan is queued, not parsed while the scan
+        // is in progress, and reported when the scan is finished
+        final int[] fieldsWhileLoading = {-1};
+        @SuppressWarnings("unchecked")
+        final CountingReporter loading = new CountingReporter(
+            RuntimeVisibleTestAnnotations.class,
+            RuntimeVisibleTestAnnotation.class,
+            RuntimeInvisibleTestAnnotation.class) {
+            @Override
+            public void reportFieldAnnotation(final Class<? extends Annotation> annotation,
+                final String className, final String fieldName) {
+
+                super.reportFieldAnnotation(annotation, className, fieldName);
+                if (fieldsWhileLoading[0] == -1) {
+                    agent.transform(null, name, null, null, classFile);
+                    fieldsWhileLoading[0] = getFieldCount();
+                }
+            }
+        };
+        final AnnotationDetector scanning = new AnnotationDetector(loading);
+        AnnotationAgent.register(scanning);
+        try {
+            scanning.detect(name, classFile, 0, classFile.length);
+        } finally {
+            AnnotationAgent.unregister(scanning);
+        }
+        assertEquals(1, fieldsWhileLoading[0]);
+        assertEquals(0, scanning.getErrorCount());
+        assertEquals(2 * 2, loading.getTypeCount());
+        assertEquals(2 * 1, loading.getFieldCount());
+        assertEquals(2 * 2, loading.getMethodCount());
+    }
+
+    @Test
+    public void testModernConstantPoolTags() throws IOException {
+        final CountingReporter counter = new CountingReporter(Deprecated.class);
+        final AnnotationDetector cf = new AnnotationDetector(counter);
+        // CONSTANT_Dynamic (17), CONSTANT_Module (19) and CONSTANT_Package (20)
+        cf.detect(resources(classFile(17, 19, 20)));
+        assertEquals(0, cf.getErrorCount());
+    }
+
+    @Test
+    public void testMalformedClassFileIsReported() throws IOException {
+        final CountingReporter counter = new CountingReporter(Deprecated.class);
+        final List<String> errors = new ArrayList<String>();
+        final AnnotationDetector cf = new AnnotationDetector(counter)
+            .errorReporter(new AnnotationDetector.ErrorReporter() {
+                @Override
+                public void reportError(final String name, final String message) {
+                    errors.add(message);
+                }
+            });
+        cf.detect(resources(classFile(99), classFile(19)));
+        assertEquals(1, cf.getErrorCount());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).contains("99"));
+    }
+
+    private static class NameCountingReporter implements AnnotationDetector.NameReporter {
+
+        private final String[] selectors;
+        private final Set<String> names = new HashSet<String>();
+        private int count;
+
+        NameCountingReporter(final String... selectors) {
+            this.selectors = selectors;
+        }
+
+        @Override
+        public String[] annotationNames() {
+            return selectors;
+        }
+
+        @Override
+        public void reportAnnotation(final ElementType target, final String annotationName,
+            final String className, final String memberName) {
+
+            ++count;
+            names.add(annotationName);
+        }
+
+    }
+
+    /**
+     * Return a minimal Java ClassFile, with one constant pool entry for every specified tag.
+     */
+    private static byte[] classFile(final int... tags) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(53);
+        out.writeShort(3 + tags.length);
+        out.writeByte(1); // #1 CONSTANT_Utf8
+        out.writeUTF("Test");
+        out.writeByte(7); // #2 CONSTANT_Class
+        out.writeShort(1);
+        for (final int tag : tags) {
+            out.writeByte(tag);
+            out.writeShort(1);
+            if (tag == 17) {
+                out.writeShort(1);
+            }
+        }
+        out.writeShort(0x0001); // access flags
+        out.writeShort(2); // this class
+        out.writeShort(0); // super class
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+        out.writeShort(0); // methods
+        out.writeShort(0); // attributes
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Return the number of methods annotated with {@code @Test} in the compiled test
+     * classes, determined using reflection.
+     */
+    private static int testMethodCount() throws IOException {
+        return testMethodCount(new File("target/test-classes/eu/infomas"), "eu.infomas.");
+    }
+
+    private static int testMethodCount(final File dir, final String pkgName)
+        throws IOException {
+
+        int count = 0;
+        for (final File file : dir.listFiles()) {
+            final String name = file.getName();
+            if (file.isDirectory()) {
+                count += testMethodCount(file, pkgName + name + '.');
+            } else if (name.endsWith(".class")) {
+                final Class<?> type;
+                try {
+                    type = Class.forName(pkgName + name.substring(0, name.length() - 6),
+                        false, AnnotationDetectorTest.class.getClassLoader());
+                } catch (ClassNotFoundException ex) {
+                    throw new IOException(ex);
+                }
+                for (final Method method : type.getDeclaredMethods()) {
+                    if (method.isAnnotationPresent(Test.class)) {
+                        ++count;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return the ClassFile of this class, preceded by the specified number of zero bytes.
+     */
+    private static byte[] readClassFile(final int offset) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(new byte[offset]);
+        final InputStream in = AnnotationDetectorTest.class.getResourceAsStream(
+            "AnnotationDetectorTest.class");
+        try {
+            final byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ResourceIterator resources(final byte[]... classFiles) {
+        return new ResourceIterator() {
+            private int index;
+
+            @Override
+            public InputStream next() {
+                return index < classFiles.length ?
+                    new ByteArrayInputStream(classFiles[index++]) : null;
+            }
+        };
+    }
+
     /**
      * Test the more complex annotation on this class (RuntimeVisibleTestAnnotations).
      * Ensure that both visible and invisible annotations are reported.
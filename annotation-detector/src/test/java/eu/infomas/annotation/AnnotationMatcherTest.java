@@ -0,0 +1,41 @@
+package eu.infomas.annotation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public final class AnnotationMatcherTest {
+
+    @Test
+    public void testSelectors() {
+        final AnnotationMatcher matcher = AnnotationMatcher.compile(
+            "javax.persistence.Entity", "javax.persistence.*", "java.lang.Deprecated");
+        assertEquals(0, matcher.match("Ljavax/persistence/Entity;"));
+        assertEquals(1, matcher.match("Ljavax/persistence/Table;"));
+        assertEquals(1, matcher.match("Ljavax/persistence/metamodel/StaticMetamodel;"));
+        assertEquals(2, matcher.match("Ljava/lang/Deprecated;"));
+        assertEquals(AnnotationMatcher.NO_MATCH, matcher.match("Ljava/lang/Override;"));
+        assertEquals(AnnotationMatcher.NO_MATCH, matcher.match("Ljava/lang/Deprecated2;"));
+        assertEquals(null, matcher.exactNames());
+
+        final byte[] bytes = "xxLjava/lang/Deprecated;xx".getBytes();
+        assertEquals(2, matcher.match(bytes, 2, bytes.length - 4));
+    }
+
+    @Test
+    public void testAll() {
+        final AnnotationMatcher matcher = AnnotationMatcher.compile("java.lang.Deprecated", "*");
+        assertEquals(0, matcher.match("Ljava/lang/Deprecated;"));
+        assertEquals(1, matcher.match("Ljava/lang/Override;"));
+        assertEquals(1, matcher.match("Lcafé/Menu;"));
+    }
+
+    @Test
+    public void testExactNames() {
+        final AnnotationMatcher matcher = AnnotationMatcher.compile("java.lang.Deprecated");
+        assertEquals(1, matcher.exactNames().size());
+        assertEquals("Ljava/lang/Deprecated;", matcher.exactNames().iterator().next());
+        assertEquals(AnnotationMatcher.NO_MATCH, matcher.match("Ljava/lang/"));
+    }
+
+}
@@ -0,0 +1,161 @@
+package eu.infomas.annotation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWiring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import eu.infomas.annotation.AnnotationDetectorTest.CountingReporter;
+
+public final class BundleResourceIteratorTest {
+
+    private static final File CLASSES = new File("./target/test-classes");
+    // the number of opened bundle entries
+    private static final AtomicInteger OPENED = new AtomicInteger();
+
+    @Test
+    public void testBundles() throws IOException {
+        final CountingReporter expected = new CountingReporter(Test.class);
+        new AnnotationDetector(expected).detect("eu.infomas.annotation");
+
+        final long[] lastModified = {1L};
+        final List<Bundle> bundles = Arrays.asList(
+            bundle(1, false, lastModified), bundle(2, true, lastModified), bundle(3, false, null));
+        final String[] filter = {"eu/infomas/annotation/"};
+
+        final CountingReporter counter = new CountingReporter(Test.class);
+        new AnnotationDetector(counter).detect(new BundleResourceIterator(bundles, filter));
+        assertEquals(expected.getMethodCount(), counter.getMethodCount());
+
+        final CountingReporter parallel = new CountingReporter(Test.class);
+        new AnnotationDetector(parallel).parallelism(2)
+            .detect(new BundleResourceIterator(bundles, filter));
+        assertEquals(expected.getMethodCount(), parallel.getMethodCount());
+
+        // the second scan of the same bundle revision is served from the cache
+        final ScanCache cache = new ScanCache(1024 * 1024);
+        final CountingReporter cached = new CountingReporter(Test.class);
+        final AnnotationDetector detector =
+            new AnnotationDetector(cached).scanCache(cache).parallelism(2);
+        detector.detect(new BundleResourceIterator(bundles, filter));
+        final long misses = cache.getMissCount();
+        assertTrue(misses > 0);
+        final int opened = OPENED.get();
+        detector.detect(new BundleResourceIterator(bundles, filter));
+        assertEquals(misses, cache.getMissCount());
+        // cached bundles are not read ahead
+        assertEquals(opened, OPENED.get());
+        assertEquals(misses, cache.getHitCount());
+        assertEquals(2 * expected.getMethodCount(), cached.getMethodCount());
+
+        // updated bundle
+        lastModified[0] = 2L;
+        detector.detect(new BundleResourceIterator(bundles, filter));
+        assertEquals(2 * misses, cache.getMissCount());
+    }
+
+    /**
+     * Return a bundle with the test classes as content, not resolved if lastModified is
+     * {@code null}.
+     */
+    private static Bundle bundle(final long id, final boolean fragment,
+        final long[] lastModified) {
+
+        final BundleRevision revision = proxy(BundleRevision.class, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                return "getTypes".equals(method.getName()) ?
+                    (fragment ? BundleRevision.TYPE_FRAGMENT : 0) : null;
+            }
+        });
+        final BundleWiring wiring = proxy(BundleWiring.class, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args)
+                throws IOException {
+
+                if ("getRevision".equals(method.getName())) {
+                    return revision;
+                }
+                if ("findEntries".equals(method.getName())) {
+                    final List<URL> urls = new ArrayList<URL>();
+                    list(id, (String)args[0], urls);
+                    return urls;
+                }
+                return null;
+            }
+        });
+        return proxy(Bundle.class, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("adapt".equals(method.getName())) {
+                    return lastModified == null ? null : wiring;
+                }
+                if ("getBundleId".equals(method.getName())) {
+                    return id;
+                }
+                if ("getLastModified".equals(method.getName())) {
+                    return lastModified[0];
+                }
+                return null;
+            }
+        });
+    }
+
+    private static void list(final long id, final String path, final List<URL> urls)
+        throws IOException {
+
+        final String dir = path.startsWith("/") ? path.substring(1) : path;
+        final File[] files = new File(CLASSES, dir).listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            final String name = dir.length() == 0 ? file.getName() : dir + '/' + file.getName();
+            if (file.isDirectory()) {
+                list(id, name, urls);
+            } else if (name.endsWith(".class")) {
+                urls.add(new URL("bundle", id + ".0", -1, '/' + name, new URLStreamHandler() {
+                    @Override
+                    protected URLConnection openConnection(final URL url) {
+                        return new URLConnection(url) {
+                            @Override
+                            public void connect() {
+                            }
+
+                            @Override
+                            public InputStream getInputStream() throws IOException {
+                                OPENED.incrementAndGet();
+                                return new FileInputStream(new File(CLASSES, url.getPath()));
+                            }
+                        };
+                    }
+                }));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return (T)Proxy.newProxyInstance(
+            BundleResourceIteratorTest.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+}
@@ -0,0 +1,50 @@
+package eu.infomas.annotation;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+import eu.infomas.annotation.AnnotationDetectorTest.CountingReporter;
+
+public final class ClassFileBufferPoolTest {
+
+    private static final File RT_JAR =
+        new File(new File(System.getProperty("java.home")), "lib/rt.jar");
+
+    @Test
+    public void testBufferIsReused() throws IOException {
+        final ClassFileBufferPool pool = new ClassFileBufferPool(1024 * 1024, 2);
+        final AnnotationDetector detector =
+            new AnnotationDetector(new CountingReporter(Deprecated.class)).bufferPool(pool);
+        detector.detect(RT_JAR);
+        detector.detect(RT_JAR);
+        assertEquals(2, pool.getAcquireCount());
+        assertEquals(1, pool.getAllocationCount());
+        assertEquals(0, pool.getDroppedCount());
+    }
+
+    @Test
+    public void testOversizedBufferIsDropped() throws IOException {
+        final ClassFileBufferPool pool = new ClassFileBufferPool(16 * 1024, 2);
+        final ClassFileBuffer buffer = pool.acquire();
+        buffer.readFrom(new ByteArrayInputStream(new byte[100 * 1024]));
+        assertEquals(128 * 1024, buffer.capacity());
+        pool.trim(buffer);
+        assertEquals(8 * 1024, buffer.capacity());
+        assertEquals(1, pool.getDroppedCount());
+
+        // a buffer of the thread is reused, others are shared
+        final ClassFileBuffer first = pool.acquire();
+        final ClassFileBuffer second = pool.acquire();
+        pool.release(first);
+        pool.release(second);
+        pool.release(buffer);
+        assertEquals(2, pool.getPooledCount());
+        assertEquals(4, pool.getAllocationCount());
+    }
+
+}
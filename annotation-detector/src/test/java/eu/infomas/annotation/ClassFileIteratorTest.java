@@ -1,11 +1,21 @@
 package eu.infomas.annotation;
 
 import org.junit.Test;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
 
 public class ClassFileIteratorTest {
 
@@ -19,4 +29,106 @@ public class ClassFileIteratorTest {
         stream.close();
     }
 
+    @Test
+    public void testShadowedClasses() throws IOException {
+        final File classes = new File("./target/test-classes");
+        final File[] f = {classes, new File(classes.getPath() + "/")};
+        final int all = count(new ClassFileIterator(f, null));
+
+        final ClassFileIterator iter = new ClassFileIterator(f, null);
+        iter.skipShadowedClasses();
+        assertEquals(all / 2, count(iter));
+    }
+
+    @Test
+    public void testMultiReleaseJar() throws IOException {
+        final File jar = new File("./target/multi-release.jar");
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Multi-Release", "true");
+        final JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest);
+        try {
+            for (final String name : new String[] {"a/A.class", "a/B.class",
+                "META-INF/versions/9/a/A.class", "META-INF/versions/11/a/A.class",
+                "META-INF/versions/9999/a/B.class"}) {
+
+                out.putNextEntry(new ZipEntry(name));
+                out.write(name.getBytes("UTF-8"));
+            }
+        } finally {
+            out.close();
+        }
+        final File[] f = {jar};
+        // manifest and all ClassFiles
+        assertEquals(6, count(new ClassFileIterator(f, null)));
+
+        final ClassFileIterator iter = new ClassFileIterator(f, new String[] {"a/"});
+        iter.skipShadowedClasses();
+        int count = 0;
+        while (iter.next() != null) {
+            ++count;
+            final String name = iter.getName();
+            if (name.endsWith("A.class")) {
+                // exactly one version of a/A.class, depending on the running JVM
+                assertTrue(name, name.startsWith("META-INF/versions/") ||
+                    System.getProperty("java.specification.version").startsWith("1."));
+            } else {
+                assertEquals("a/B.class", name);
+            }
+        }
+        assertEquals(2, count);
+    }
+
+    @Test
+    public void testResources() throws IOException {
+        final File jar = new File("./target/resources.jar");
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        final JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest);
+        try {
+            for (final String name : new String[] {"META-INF/services/a.B",
+                "META-INF/plugin.xml", "META-INF/maven/plugin.xml", "a/A.class",
+                "a/config.properties", "a/readme.txt"}) {
+
+                out.putNextEntry(new ZipEntry(name));
+                out.write(name.getBytes("UTF-8"));
+            }
+        } finally {
+            out.close();
+        }
+        final List<String> names = new ArrayList<String>();
+        final ClassFileIterator iter =
+            new ClassFileIterator(new File[] {jar}, new String[] {"a/"});
+        iter.reportResources(new ResourceFilter(new AnnotationDetector.ResourceReporter() {
+            @Override
+            public String[] resourceNames() {
+                return new String[] {"META-INF/services/*", "META-INF/*.xml", "*.properties"};
+            }
+
+            @Override
+            public void reportResource(final String name, final InputStream stream)
+                throws IOException {
+
+                final byte[] bytes = new byte[name.length()];
+                assertEquals(bytes.length, stream.read(bytes));
+                assertEquals(name, new String(bytes, "UTF-8"));
+                names.add(name);
+            }
+        }));
+        // resources are not returned
+        assertEquals(2, count(iter));
+        assertEquals(Arrays.asList(
+            "META-INF/services/a.B", "META-INF/plugin.xml", "a/config.properties"), names);
+    }
+
+    private static int count(final ClassFileIterator iter) throws IOException {
+        int count = 0;
+        InputStream stream;
+        while ((stream = iter.next()) != null) {
+            stream.close();
+            ++count;
+        }
+        return count;
+    }
+
 }
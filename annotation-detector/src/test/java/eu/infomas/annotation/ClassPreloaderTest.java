@@ -0,0 +1,59 @@
+package eu.infomas.annotation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class ClassPreloaderTest {
+
+    private static volatile boolean initialized;
+
+    static final class Initialized {
+
+        static {
+            initialized = true;
+        }
+
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        final ScanResult.Collector collector = new ScanResult.Collector("*");
+        new AnnotationDetector(collector).detect("eu.infomas");
+        final List<String> names =
+            new ArrayList<String>(collector.build().getClassNames());
+        names.add("eu.infomas.annotation.DoesNotExist");
+        names.add(String.class.getName());
+        names.add(Initialized.class.getName());
+
+        final ClassPreloader.Result result = ClassPreloader.load(
+            getClass().getClassLoader(), names, false, 4);
+        assertEquals(names.size() - 1, result.getClasses().size());
+        assertSame(String.class, result.getClasses().get(String.class.getName()));
+        assertSame(ClassPreloaderTest.class,
+            result.getClasses().get(ClassPreloaderTest.class.getName()));
+        assertEquals(Arrays.asList("eu.infomas.annotation.DoesNotExist"),
+            new ArrayList<String>(result.getFailures().keySet()));
+        assertTrue(result.getFailures().values().iterator().next()
+            instanceof ClassNotFoundException);
+
+        // small chunks, so the classes are loaded by several threads
+        final ClassPreloader.Result parallel = ClassPreloader.load(
+            getClass().getClassLoader(), names, false, 4, 2);
+        assertEquals(result.getClasses(), parallel.getClasses());
+        assertFalse(initialized);
+
+        final ClassPreloader.Result initialize = ClassPreloader.load(
+            getClass().getClassLoader(), names, true, 4, 2);
+        assertEquals(result.getClasses(), initialize.getClasses());
+        assertTrue(initialized);
+    }
+
+}
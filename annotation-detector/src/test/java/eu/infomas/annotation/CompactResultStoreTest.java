@@ -0,0 +1,59 @@
+package eu.infomas.annotation;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import eu.infomas.annotation.AnnotationDetectorTest.CountingReporter;
+
+public final class CompactResultStoreTest {
+
+    private static final File RT_JAR =
+        new File(new File(System.getProperty("java.home")), "lib/rt.jar");
+
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Annotation>[] ANNOTATIONS =
+        new Class[] {Deprecated.class, RuntimeVisibleTestAnnotation.class};
+
+    @Test
+    public void testOffHeap() throws IOException {
+        final CompactResultStore store = new CompactResultStore(ANNOTATIONS);
+        assertReplay(store);
+    }
+
+    @Test
+    public void testMemoryMapped() throws IOException {
+        final File dir = new File("target/compact-result-store");
+        assertTrue(dir.isDirectory() || dir.mkdirs());
+        final CompactResultStore store = new CompactResultStore(dir, ANNOTATIONS);
+        try {
+            assertReplay(store);
+        } finally {
+            store.close();
+        }
+    }
+
+    private void assertReplay(final CompactResultStore store) throws IOException {
+        new AnnotationDetector(store).detect(RT_JAR);
+        final CountingReporter expected = new CountingReporter(Deprecated.class);
+        new AnnotationDetector(expected).detect(RT_JAR);
+
+        final CountingReporter counter = new CountingReporter(Deprecated.class);
+        store.replay(counter);
+        assertEquals(expected.getTypeCount(), counter.getTypeCount());
+        assertEquals(expected.getFieldCount(), counter.getFieldCount());
+        assertEquals(expected.getMethodCount(), counter.getMethodCount());
+        final CountingReporter all = new CountingReporter(ANNOTATIONS);
+        store.replay(all);
+        assertEquals(store.size(),
+            all.getTypeCount() + all.getFieldCount() + all.getMethodCount());
+        // class and member names are stored only once
+        assertTrue(store.getStringCount() < store.size());
+    }
+
+}
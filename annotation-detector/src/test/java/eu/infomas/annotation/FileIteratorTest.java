@@ -14,6 +14,9 @@ import org.junit.Test;
 
 public final class FileIteratorTest {
 
+    // a fixed directory tree: 7 files in eu/infomas/annotation and 1 in eu/infomas/util
+    private static final String FIXTURE = "./src/test/resources/file-iterator";
+
     @Test
     public void testNoFile() throws IOException {
         FileIterator iter = new FileIterator();
@@ -30,15 +33,15 @@ public final class FileIteratorTest {
     @Test
     public void testSingleDirectory1() throws IOException {
         FileIterator iter = new FileIterator(
-            new File("./src/test/java/eu/infomas/annotation"));
+            new File(FIXTURE, "eu/infomas/annotation"));
         assertEquals(7, countFiles(iter));
     }
     
     @Test
     public void testSingleDirectory4() throws IOException {
         FileIterator iter = new FileIterator(
-            new File("./src/test/java/eu/infomas"));
-        // 5 in annotation and 2 in util
+            new File(FIXTURE, "eu/infomas"));
+        // 7 in annotation and 1 in util
         assertEquals(8, countFiles(iter));
     }
     
@@ -46,7 +49,7 @@ public final class FileIteratorTest {
     public void testMixed() throws IOException {
         FileIterator iter = new FileIterator(
             new File("./src/test/java/eu/infomas/util/TestSupport.java"), 
-            new File("./src/test/java/eu/infomas/annotation/"));
+            new File(FIXTURE, "eu/infomas/annotation/"));
         assertEquals(8, countFiles(iter));
     }
     @Test
@@ -96,6 +99,31 @@ public final class FileIteratorTest {
         }
     }
     
+    @Test
+    public void testPackageFilter() throws IOException {
+        FileIterator iter = new FileIterator(
+            new File[] {new File(FIXTURE)}, new String[] {"eu/infomas/util/"});
+        assertEquals(1, countFiles(iter));
+
+        iter = new FileIterator(new File[] {new File(FIXTURE)},
+            new String[] {"eu/infomas/util/", "eu/infomas/annotation/"});
+        assertEquals(8, countFiles(iter));
+
+        iter = new FileIterator(
+            new File[] {new File(FIXTURE)}, new String[] {"eu/infomas/none/"});
+        assertEquals(0, countFiles(iter));
+
+        // the path of a file system root ends with a separator
+        File root = new File("./src/test/java").getCanonicalFile();
+        while (root.getParentFile() != null) {
+            root = root.getParentFile();
+        }
+        final String pkgName = new File("./src/test/java/eu/infomas/util").getCanonicalPath()
+            .substring(root.getPath().length()).replace(File.separatorChar, '/') + '/';
+        iter = new FileIterator(new File[] {root}, new String[] {pkgName});
+        assertEquals(1, countFiles(iter));
+    }
+
     private int countFiles(final FileIterator iter) throws IOException {
         int counter = 0;
         while (iter.next() != null) {
@@ -0,0 +1,57 @@
+package eu.infomas.annotation;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import eu.infomas.annotation.AnnotationDetectorTest.CountingReporter;
+
+public final class ReferenceIndexTest {
+
+    @Test
+    public void testReferences() throws IOException {
+        final CountingReporter expected = new CountingReporter(Test.class);
+        new AnnotationDetector(expected).detect("eu.infomas.annotation");
+
+        final ReferenceIndex.Collector collector = new ReferenceIndex.Collector();
+        final CountingReporter counter = new CountingReporter(Test.class);
+        new AnnotationDetector(counter)
+            .scanCache(new ScanCache(1024 * 1024))
+            .collectReferences(collector)
+            .detect("eu.infomas.annotation");
+        // collected in the same pass
+        assertEquals(expected.getMethodCount(), counter.getMethodCount());
+        final ReferenceIndex index = collector.build();
+
+        final String self = ReferenceIndexTest.class.getName();
+        final String detectorTest = AnnotationDetectorTest.class.getName();
+        final String bundleTest = BundleResourceIteratorTest.class.getName();
+        assertTrue(index.getClassNames().contains(self));
+        assertTrue(index.getClassNames().contains(detectorTest));
+
+        final List<String> referenced = index.getReferencedClasses(self);
+        assertTrue(referenced.contains(ReferenceIndex.class.getName()));
+        assertTrue(referenced.contains("org.junit.Assert"));
+        assertFalse(referenced.contains(self));
+        assertTrue(index.getReferencedMembers(self).contains(
+            ReferenceIndex.class.getName() + "#getReferencingClasses"));
+
+        final String scanSpec = ScanSpec.class.getName();
+        assertTrue(index.getReferencingClasses(scanSpec).contains(detectorTest));
+        assertTrue(index.getReferencingClasses(scanSpec, "of").contains(detectorTest));
+        assertFalse(index.getReferencingClasses(scanSpec, "of").contains(self));
+
+        final List<String> osgi = index.getReferencingClasses("org.osgi.*");
+        assertTrue(osgi.contains(bundleTest));
+        assertFalse(osgi.contains(detectorTest));
+        assertEquals(0, index.getReferencingClasses("org.osgi.framework.Foo").size());
+        assertEquals(index.getClassNames().size(),
+            index.getReferencingClasses("*").size());
+    }
+
+}
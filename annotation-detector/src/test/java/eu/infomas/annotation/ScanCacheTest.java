@@ -0,0 +1,147 @@
+package eu.infomas.annotation;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import eu.infomas.annotation.AnnotationDetectorTest.CountingReporter;
+
+public final class ScanCacheTest {
+
+    private static final File RT_JAR =
+        new File(new File(System.getProperty("java.home")), "lib/rt.jar");
+
+    @Test
+    public void testCachedScanReportsSameAnnotations() throws IOException {
+        final CountingReporter expected = new CountingReporter(Deprecated.class);
+        new AnnotationDetector(expected).detect(RT_JAR);
+
+        final ScanCache cache = new ScanCache(64L * 1024 * 1024);
+        // first scan fills the cache, second scan is served from the cache
+        for (int i = 0; i < 2; ++i) {
+            final CountingReporter counter = new CountingReporter(Deprecated.class);
+            new AnnotationDetector(counter).scanCache(cache).detect(RT_JAR);
+            assertEquals(expected.getTypeCount(), counter.getTypeCount());
+            assertEquals(expected.getFieldCount(), counter.getFieldCount());
+            assertEquals(expected.getMethodCount(), counter.getMethodCount());
+        }
+        assertEquals(cache.getMissCount(), cache.getHitCount());
+        assertTrue(cache.getWeight() > 0);
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        final ScanCache cache = new ScanCache(1024);
+        final CountingReporter counter = new CountingReporter(Deprecated.class);
+        new AnnotationDetector(counter).scanCache(cache).detect(RT_JAR);
+        assertTrue(counter.getTypeCount() > 0);
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testJarSummary() throws IOException {
+        final File dir = new File("target/scan-cache");
+        assertTrue(dir.isDirectory() || dir.mkdirs());
+        // the summary is computed and persisted during the first (complete) scan
+        new AnnotationDetector(new CountingReporter(Deprecated.class))
+            .scanCache(new ScanCache(1024, dir))
+            .detect(RT_JAR);
+
+        // rt.jar does not contain this annotation, so the jar file is skipped
+        final ScanCache cache = new ScanCache(1024, dir);
+        final CountingReporter counter =
+            new CountingReporter(RuntimeVisibleTestAnnotation.class);
+        new AnnotationDetector(counter).scanCache(cache).detect(RT_JAR);
+        assertEquals(0, counter.getTypeCount() + counter.getMethodCount());
+        assertEquals(0, cache.getMissCount());
+
+        // but not for an annotation contained in rt.jar
+        final CountingReporter deprecated = new CountingReporter(Deprecated.class);
+        new AnnotationDetector(deprecated).scanCache(cache).detect(RT_JAR);
+        assertTrue(deprecated.getTypeCount() > 0);
+        assertTrue(cache.getMissCount() > 0);
+
+        // a corrupted summary is computed again
+        for (final File file : dir.listFiles()) {
+            final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+            try {
+                out.writeUTF("corrupted");
+                out.writeInt(-1);
+            } finally {
+                out.close();
+            }
+        }
+        final ScanCache rebuilt = new ScanCache(1024, dir);
+        new AnnotationDetector(new CountingReporter(RuntimeVisibleTestAnnotation.class))
+            .scanCache(rebuilt)
+            .detect(RT_JAR);
+        assertTrue(rebuilt.getMissCount() > 0);
+    }
+
+    @Test
+    public void testIdenticalJarFiles() throws IOException {
+        final File source = new File("src/test/resources/test.jar.extension");
+        final File a = copy(source, new File("target/webapp-a/test.jar"));
+        final File b = copy(source, new File("target/webapp-b/test.jar"));
+        assertTrue(b.setLastModified(a.lastModified() - 60000L));
+
+        // identified by path: both copies are parsed
+        final ScanCache byPath = new ScanCache(1024 * 1024);
+        new AnnotationDetector(new CountingReporter(Deprecated.class))
+            .scanCache(byPath).detect(a, b);
+        assertTrue(byPath.getMissCount() > 0);
+        assertEquals(0, byPath.getHitCount());
+
+        // identified by content: the second copy is served from the cache
+        final ScanCache byContent = new ScanCache(1024 * 1024, null, true);
+        new AnnotationDetector(new CountingReporter(Deprecated.class))
+            .scanCache(byContent).detect(a, b);
+        assertEquals(byPath.getMissCount() / 2, byContent.getMissCount());
+        assertEquals(byContent.getMissCount(), byContent.getHitCount());
+        assertEquals(byContent.key(a), byContent.key(b));
+        // length, central directory size and SHA-256 digest (hex)
+        assertEquals(64, byContent.key(a).split("\\|")[2].length());
+
+        // a modified jar file replaces its fingerprint
+        assertTrue(a.setLastModified(a.lastModified() - 60000L));
+        byContent.key(a);
+        assertEquals(2, byContent.getFingerprintCount());
+
+        // fingerprints are evicted together with the cached entries
+        final ScanCache small = new ScanCache(1, null, true);
+        new AnnotationDetector(new CountingReporter(Deprecated.class))
+            .scanCache(small).detect(a, b);
+        assertEquals(0, small.getWeight());
+        assertEquals(0, small.getFingerprintCount());
+    }
+
+    private static File copy(final File source, final File target) throws IOException {
+        assertTrue(target.getParentFile().isDirectory() || target.getParentFile().mkdirs());
+        final InputStream in = new FileInputStream(source);
+        try {
+            final OutputStream out = new FileOutputStream(target);
+            try {
+                final byte[] buffer = new byte[8 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        return target;
+    }
+
+}
@@ -0,0 +1,56 @@
+package eu.infomas.annotation;
+
+import java.io.IOException;
+import java.lang.annotation.ElementType;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import eu.infomas.annotation.AnnotationDetectorTest.CountingReporter;
+
+public final class ScanResultTest {
+
+    @Test
+    public void testQueries() throws IOException {
+        final ScanResult.Collector collector =
+            new ScanResult.Collector("eu.infomas.annotation.*", "org.junit.Test");
+        new AnnotationDetector(collector).detect("eu.infomas");
+        final ScanResult result = collector.build();
+        final CountingReporter counter = new CountingReporter(Test.class);
+        new AnnotationDetector(counter).detect("eu.infomas");
+        final int tests = counter.getMethodCount();
+
+        final String test = "org.junit.Test";
+        final String visible = RuntimeVisibleTestAnnotation.class.getName();
+        final String invisible = RuntimeInvisibleTestAnnotation.class.getName();
+        final String detectorTest = AnnotationDetectorTest.class.getName();
+
+        assertTrue(result.getAnnotationNames().contains(test));
+        assertEquals(tests, result.getHits(test).size());
+        for (final AnnotationHit hit : result.getHits(test)) {
+            assertEquals(ElementType.METHOD, hit.getTarget());
+        }
+        assertEquals(1, result.getTypesAnnotatedWith(invisible).size());
+        assertEquals(detectorTest, result.getTypesAnnotatedWith(invisible).get(0));
+        assertEquals(0, result.getTypesAnnotatedWith(test).size());
+
+        final List<AnnotationHit> onDetectorTest = result.getHitsOn(detectorTest);
+        assertTrue(onDetectorTest.contains(
+            new AnnotationHit(ElementType.TYPE, invisible, detectorTest, null)));
+        assertTrue(onDetectorTest.contains(
+            new AnnotationHit(ElementType.METHOD, test, detectorTest, "testScanServer")));
+
+        assertEquals(tests, result.getHitsInPackage(test, "eu.infomas.annotation").size());
+        assertEquals(0, result.getHitsInPackage(test, "eu.infomas").size());
+        // the only other hit is on TestSupport.ValuePredicateFixture
+        assertEquals(1, result.getHitsInPackage("eu.infomas.util").size());
+        assertEquals(result.getHitsInPackage("eu.infomas.annotation").size() + 1,
+            result.size());
+        assertTrue(result.getHits(visible).size() > 0);
+        assertEquals(0, result.getHits("java.lang.Deprecated").size());
+    }
+
+}
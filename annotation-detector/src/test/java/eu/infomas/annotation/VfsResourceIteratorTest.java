@@ -0,0 +1,39 @@
+package eu.infomas.annotation;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.vfs.VFS;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import eu.infomas.annotation.AnnotationDetectorTest.CountingReporter;
+
+public final class VfsResourceIteratorTest {
+
+    @Test
+    public void testReadAhead() throws IOException {
+        final CountingReporter expected = new CountingReporter(Test.class);
+        new AnnotationDetector(expected).detect("eu.infomas.annotation");
+        assertTrue(expected.getMethodCount() > 0);
+
+        // the real file system is mounted as VFS root
+        final List<URL> urls = Arrays.asList(VFS.getChild(
+            new File("./target/test-classes/eu/infomas/annotation").getCanonicalPath())
+            .toURL());
+
+        final CountingReporter counter = new CountingReporter(Test.class);
+        new AnnotationDetector(counter).detect(new VfsResourceIterator(urls));
+        assertEquals(expected.getMethodCount(), counter.getMethodCount());
+
+        final CountingReporter parallel = new CountingReporter(Test.class);
+        new AnnotationDetector(parallel).parallelism(4).detect(new VfsResourceIterator(urls));
+        assertEquals(expected.getMethodCount(), parallel.getMethodCount());
+    }
+
+}
@@ -21,6 +21,8 @@
  */
 package eu.infomas.util;
 
+import eu.infomas.annotation.RuntimeVisibleTestAnnotation;
+
 /**
  * {@code TestSupport} offers some simple utility methods useful during development and
  * testing.
@@ -30,6 +32,19 @@ package eu.infomas.util;
  */
 public final class TestSupport {
 
+    /**
+     * Fixture for the {@code ValuePredicate} tests: the only annotated method in this package.
+     * It lives outside {@code eu.infomas.annotation}, so it does not change the counts of
+     * the tests scanning that package.
+     */
+    public static final class ValuePredicateFixture {
+
+        @RuntimeVisibleTestAnnotation(name = "filtered")
+        public void filtered() {
+        }
+
+    }
+
     // utility class
     private TestSupport() {
     } 